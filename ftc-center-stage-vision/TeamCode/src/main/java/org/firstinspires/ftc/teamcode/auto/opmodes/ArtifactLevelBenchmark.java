@@ -0,0 +1,128 @@
+package org.firstinspires.ftc.teamcode.auto.opmodes;
+
+import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
+import com.qualcomm.robotcore.eventloop.opmode.Disabled;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.android.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.auto.vision.FrameReplay;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageFileWriter;
+import org.firstinspires.ftc.teamcode.auto.vision.RecognitionWorkspace;
+import org.firstinspires.ftc.teamcode.auto.vision.TeamPropRecognition;
+import org.firstinspires.ftc.teamcode.auto.vision.TeamPropReturn;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.robot.device.camera.ReplayImageProvider;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMappingXML;
+import org.firstinspires.ftc.teamcode.xml.StartParametersXML;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParametersXML;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathException;
+
+// Measures the cost of each ArtifactLevel on the Control Hub. Replays
+// the _IMG.png files in images/benchmark/ through the recognition path
+// of BLUE_A2 in RobotAction.xml once per level and reports the time
+// from the handoff of each image to the decision. The image files are
+// written asynchronously, as in Autonomous; the queue is drained
+// between levels so that one level's backlog does not slow the next.
+@Autonomous(name = "Artifact Level Benchmark", group = "Test")
+@Disabled
+public class ArtifactLevelBenchmark extends LinearOpMode {
+    private static final String TAG = ArtifactLevelBenchmark.class.getSimpleName();
+
+    private static final String BENCHMARK_IMAGE_DIR = "benchmark/";
+    private static final RobotConstantsCenterStage.OpMode BENCHMARK_OPMODE = RobotConstantsCenterStage.OpMode.BLUE_A2;
+    private static final RobotConstants.Alliance BENCHMARK_ALLIANCE = RobotConstants.Alliance.BLUE;
+    private static final int REPLAY_CACHE_CAPACITY = 4;
+
+    @Override
+    public void runOpMode() throws InterruptedException {
+        String workingDirectory = WorkingDirectory.getWorkingDirectory();
+        String xmlDirectory = workingDirectory + RobotConstants.XML_DIR;
+        String benchmarkImageDirectory = workingDirectory + RobotConstants.IMAGE_DIR + BENCHMARK_IMAGE_DIR;
+
+        TeamPropParameters teamPropParameters;
+        SpikeWindowMapping opModeSpikeWindowMapping;
+        try {
+            StartParametersXML startParametersXML = new StartParametersXML(xmlDirectory);
+            teamPropParameters = new TeamPropParametersXML(xmlDirectory).getTeamPropParameters();
+            SpikeWindowMappingXML spikeWindowMappingXML = new SpikeWindowMappingXML(startParametersXML.getStartParameters().robotActionFilename);
+            opModeSpikeWindowMapping = spikeWindowMappingXML.collectSpikeWindowMapping(BENCHMARK_OPMODE);
+        } catch (ParserConfigurationException | SAXException | XPathException | IOException e) {
+            throw new AutonomousRobotException(TAG, e.getMessage());
+        }
+
+        if (opModeSpikeWindowMapping == null)
+            throw new AutonomousRobotException(TAG, "Element 'FIND_TEAM_PROP' not found under OpMode " + BENCHMARK_OPMODE);
+
+        telemetry.addData(TAG, "Replaying " + benchmarkImageDirectory);
+        telemetry.update();
+        waitForStart();
+
+        RecognitionWorkspace workspace = new RecognitionWorkspace(opModeSpikeWindowMapping.imageParameters);
+        TeamPropRecognition teamPropRecognition = new TeamPropRecognition(BENCHMARK_ALLIANCE, true, workspace);
+        try {
+            for (RobotConstantsCenterStage.ArtifactLevel artifactLevel : RobotConstantsCenterStage.ArtifactLevel.values()) {
+                if (isStopRequested())
+                    break;
+
+                SpikeWindowMapping levelMapping = opModeSpikeWindowMapping.withSingleFrameRecognition()
+                        .withArtifactLevel(artifactLevel).withProcessingScale(1.0);
+
+                String summary = benchmarkLevel(teamPropRecognition, teamPropParameters, levelMapping, benchmarkImageDirectory);
+                RobotLogCommon.d(TAG, artifactLevel + ": " + summary);
+                telemetry.addData(artifactLevel.toString(), summary);
+                telemetry.update();
+            }
+        } finally {
+            workspace.release();
+        }
+
+        while (opModeIsActive())
+            sleep(100); // leave the results on the Driver Station
+    }
+
+    private String benchmarkLevel(TeamPropRecognition pTeamPropRecognition, TeamPropParameters pTeamPropParameters,
+                                  SpikeWindowMapping pSpikeWindowMapping, String pImageDirectory) throws InterruptedException {
+        List<Double> latencies = new ArrayList<>();
+        ImageFileWriter.start(24, 1, ImageFileWriter.OverflowPolicy.DROP_OLDEST);
+        try (ReplayImageProvider replay = new ReplayImageProvider(pImageDirectory,
+                FrameReplay.ReplaySpeed.MAXIMUM, REPLAY_CACHE_CAPACITY)) {
+            while (!isStopRequested()) {
+                TeamPropReturn teamPropReturn = pTeamPropRecognition.recognizeTeamProp(replay,
+                        pSpikeWindowMapping.recognitionPath, pTeamPropParameters, pSpikeWindowMapping);
+                if (teamPropReturn.latency == null)
+                    break; // end of the replay
+
+                latencies.add(teamPropReturn.latency.handoffToPreprocessMs + teamPropReturn.latency.preprocessToDecisionMs);
+            }
+        } finally {
+            ImageFileWriter.stop(10000);
+        }
+
+        if (latencies.isEmpty())
+            return "no images";
+
+        Collections.sort(latencies);
+        double sum = 0;
+        for (double latency : latencies)
+            sum += latency;
+
+        return String.format(Locale.US, "%d images, mean %.1f ms, median %.1f ms, p95 %.1f ms",
+                latencies.size(), sum / latencies.size(), latencies.get(latencies.size() / 2),
+                latencies.get((int) Math.ceil(latencies.size() * 0.95) - 1));
+    }
+
+}
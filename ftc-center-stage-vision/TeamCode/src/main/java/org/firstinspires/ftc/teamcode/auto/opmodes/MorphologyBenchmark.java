@@ -0,0 +1,110 @@
+package org.firstinspires.ftc.teamcode.auto.opmodes;
+
+import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
+import com.qualcomm.robotcore.eventloop.opmode.Disabled;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.teamcode.auto.vision.Morphology;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Locale;
+
+// Measures morphological opening of a 640x480 ROI on the Control Hub:
+// the original separate erode and dilate with a new structuring element
+// and a new output Mat on every call, then each Morphology strategy. The
+// ROI is random noise, thresholded to binary for the binary cases. Each
+// strategy's output is checked against the original.
+@Autonomous(name = "Morphology Benchmark", group = "Test")
+@Disabled
+public class MorphologyBenchmark extends LinearOpMode {
+    private static final String TAG = MorphologyBenchmark.class.getSimpleName();
+
+    private static final int ROI_WIDTH = 640;
+    private static final int ROI_HEIGHT = 480;
+    private static final int WARMUP_ITERATIONS = 10;
+    private static final int ITERATIONS = 200;
+    private static final int[] KERNEL_SIZES = {3, 5};
+
+    @Override
+    public void runOpMode() throws InterruptedException {
+        telemetry.addData(TAG, "Press play to start");
+        telemetry.update();
+        waitForStart();
+
+        Mat gray = new Mat(ROI_HEIGHT, ROI_WIDTH, CvType.CV_8UC1);
+        Core.randu(gray, 0, 256);
+        Mat binary = new Mat();
+        Imgproc.threshold(gray, binary, 127, 255, Imgproc.THRESH_BINARY);
+        Mat expected = new Mat();
+        Mat output = new Mat(ROI_HEIGHT, ROI_WIDTH, CvType.CV_8UC1);
+        Mat difference = new Mat();
+        Morphology.Strategy originalStrategy = Morphology.getStrategy();
+        try {
+            for (int kernelSize : KERNEL_SIZES)
+                for (Mat source : new Mat[]{gray, binary}) {
+                    if (isStopRequested())
+                        return;
+
+                    String image = (source == binary ? "binary " : "gray ") + kernelSize + "x" + kernelSize;
+                    double originalUs = timeOriginal(source, kernelSize, expected);
+                    report(image + " original", String.format(Locale.US, "%.0f us", originalUs));
+
+                    for (Morphology.Strategy strategy : Morphology.Strategy.values()) {
+                        Morphology.setStrategy(strategy);
+                        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+                            Morphology.open(source, output, Imgproc.MORPH_RECT, kernelSize);
+
+                        long start = System.nanoTime();
+                        for (int i = 0; i < ITERATIONS; i++)
+                            Morphology.open(source, output, Imgproc.MORPH_RECT, kernelSize);
+                        double strategyUs = (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+
+                        Core.absdiff(output, expected, difference);
+                        int mismatches = Core.countNonZero(difference);
+                        report(image + " " + strategy, String.format(Locale.US, "%.0f us, %d mismatched pixels",
+                                strategyUs, mismatches));
+                    }
+                }
+        } finally {
+            Morphology.setStrategy(originalStrategy);
+            gray.release();
+            binary.release();
+            expected.release();
+            output.release();
+            difference.release();
+        }
+
+        while (opModeIsActive())
+            sleep(100); // leave the results on the Driver Station
+    }
+
+    // The opening as ImageUtils used to perform it. The result of the
+    // last iteration is copied to pExpected.
+    private double timeOriginal(Mat pSource, int pKernelSize, Mat pExpected) {
+        long start = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+            if (i == WARMUP_ITERATIONS)
+                start = System.nanoTime();
+
+            Mat morphed = new Mat();
+            Imgproc.erode(pSource, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(pKernelSize, pKernelSize)));
+            Imgproc.dilate(morphed, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(pKernelSize, pKernelSize)));
+            if (i == WARMUP_ITERATIONS + ITERATIONS - 1)
+                morphed.copyTo(pExpected);
+            morphed.release();
+        }
+        return (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+    }
+
+    private void report(String pCaption, String pResult) {
+        RobotLogCommon.d(TAG, pCaption + ": " + pResult);
+        telemetry.addData(pCaption, pResult);
+        telemetry.update();
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.firstinspires.ftc.teamcode.auto.opmodes;
+
+import com.qualcomm.robotcore.eventloop.opmode.Autonomous;
+import com.qualcomm.robotcore.eventloop.opmode.Disabled;
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.platform.android.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.auto.vision.FrameReplay;
+import org.firstinspires.ftc.teamcode.auto.vision.ProcessingScale;
+import org.firstinspires.ftc.teamcode.auto.vision.RecognitionWorkspace;
+import org.firstinspires.ftc.teamcode.auto.vision.TeamPropRecognition;
+import org.firstinspires.ftc.teamcode.auto.vision.TeamPropReturn;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.robot.device.camera.ReplayImageProvider;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMappingXML;
+import org.firstinspires.ftc.teamcode.xml.StartParametersXML;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParametersXML;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathException;
+
+// Checks recognition at the <processing_scale> of BLUE_A2 in
+// RobotAction.xml against recognition at full resolution. Replays the
+// _IMG.png files in images/benchmark/ through both and reports how
+// often they agree and the mean time from handoff to decision of each.
+@Autonomous(name = "Processing Scale Validation", group = "Test")
+@Disabled
+public class ProcessingScaleValidation extends LinearOpMode {
+    private static final String TAG = ProcessingScaleValidation.class.getSimpleName();
+
+    private static final String BENCHMARK_IMAGE_DIR = "benchmark/";
+    private static final RobotConstantsCenterStage.OpMode BENCHMARK_OPMODE = RobotConstantsCenterStage.OpMode.BLUE_A2;
+    private static final RobotConstants.Alliance BENCHMARK_ALLIANCE = RobotConstants.Alliance.BLUE;
+    private static final int REPLAY_CACHE_CAPACITY = 4;
+
+    @Override
+    public void runOpMode() throws InterruptedException {
+        String workingDirectory = WorkingDirectory.getWorkingDirectory();
+        String xmlDirectory = workingDirectory + RobotConstants.XML_DIR;
+        String benchmarkImageDirectory = workingDirectory + RobotConstants.IMAGE_DIR + BENCHMARK_IMAGE_DIR;
+
+        TeamPropParameters teamPropParameters;
+        SpikeWindowMapping scaledMapping;
+        try {
+            StartParametersXML startParametersXML = new StartParametersXML(xmlDirectory);
+            teamPropParameters = new TeamPropParametersXML(xmlDirectory).getTeamPropParameters();
+            SpikeWindowMappingXML spikeWindowMappingXML = new SpikeWindowMappingXML(startParametersXML.getStartParameters().robotActionFilename);
+            scaledMapping = spikeWindowMappingXML.collectSpikeWindowMapping(BENCHMARK_OPMODE);
+        } catch (ParserConfigurationException | SAXException | XPathException | IOException e) {
+            throw new AutonomousRobotException(TAG, e.getMessage());
+        }
+
+        if (scaledMapping == null)
+            throw new AutonomousRobotException(TAG, "Element 'FIND_TEAM_PROP' not found under OpMode " + BENCHMARK_OPMODE);
+
+        SpikeWindowMapping fullMapping = scaledMapping.withSingleFrameRecognition()
+                .withArtifactLevel(RobotConstantsCenterStage.ArtifactLevel.NONE).withProcessingScale(1.0);
+
+        telemetry.addData(TAG, "Scale " + scaledMapping.processingScale + ", replaying " + benchmarkImageDirectory);
+        telemetry.update();
+        waitForStart();
+
+        // Both replays deliver the same images in the same order.
+        RecognitionWorkspace fullWorkspace = new RecognitionWorkspace(fullMapping.imageParameters);
+        RecognitionWorkspace scaledWorkspace = new RecognitionWorkspace(scaledMapping.imageParameters,
+                new ProcessingScale(scaledMapping.processingScale));
+        TeamPropRecognition fullRecognition = new TeamPropRecognition(BENCHMARK_ALLIANCE, false, fullWorkspace);
+        TeamPropRecognition scaledRecognition = new TeamPropRecognition(BENCHMARK_ALLIANCE, false, scaledWorkspace);
+        int imageCount = 0;
+        int agreements = 0;
+        double fullMs = 0;
+        double scaledMs = 0;
+        try (ReplayImageProvider fullReplay = new ReplayImageProvider(benchmarkImageDirectory,
+                FrameReplay.ReplaySpeed.MAXIMUM, REPLAY_CACHE_CAPACITY);
+             ReplayImageProvider scaledReplay = new ReplayImageProvider(benchmarkImageDirectory,
+                     FrameReplay.ReplaySpeed.MAXIMUM, REPLAY_CACHE_CAPACITY)) {
+            while (!isStopRequested()) {
+                TeamPropReturn fullReturn = fullRecognition.recognizeTeamProp(fullReplay,
+                        fullMapping.recognitionPath, teamPropParameters, fullMapping);
+                TeamPropReturn scaledReturn = scaledRecognition.recognizeTeamProp(scaledReplay,
+                        scaledMapping.recognitionPath, teamPropParameters, scaledMapping);
+                if (fullReturn.latency == null || scaledReturn.latency == null)
+                    break; // end of the replay
+
+                imageCount++;
+                fullMs += fullReturn.latency.handoffToPreprocessMs + fullReturn.latency.preprocessToDecisionMs;
+                scaledMs += scaledReturn.latency.handoffToPreprocessMs + scaledReturn.latency.preprocessToDecisionMs;
+                if (fullReturn.recognitionResults == scaledReturn.recognitionResults &&
+                        fullReturn.teamPropLocation == scaledReturn.teamPropLocation)
+                    agreements++;
+                else
+                    RobotLogCommon.d(TAG, "Image " + imageCount + ": full scale " + fullReturn.recognitionResults + " " +
+                            fullReturn.teamPropLocation + ", reduced scale " + scaledReturn.recognitionResults + " " +
+                            scaledReturn.teamPropLocation);
+            }
+        } finally {
+            fullWorkspace.release();
+            scaledWorkspace.release();
+        }
+
+        String summary = imageCount == 0 ? "no images" :
+                String.format(Locale.US, "%d of %d agree; mean full scale %.1f ms, reduced scale %.1f ms",
+                        agreements, imageCount, fullMs / imageCount, scaledMs / imageCount);
+        RobotLogCommon.d(TAG, summary);
+        telemetry.addData(TAG, summary);
+        telemetry.update();
+
+        while (opModeIsActive())
+            sleep(100); // leave the results on the Driver Station
+    }
+
+}
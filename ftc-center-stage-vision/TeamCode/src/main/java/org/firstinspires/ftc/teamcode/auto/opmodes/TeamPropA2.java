@@ -62,20 +62,27 @@ public class TeamPropA2 extends LinearOpMode {
             throw new AutonomousRobotException(TAG, e.getMessage());
         }
 
-        telemetry.addData(TAG, "Waiting for start ...");
-        telemetry.update();
+        try {
+            // Look for the Team Prop while waiting for START.
+            teamPropAuto.startPreStartRecognition();
 
-        // Wait for the game to start (driver presses PLAY)
-        waitForStart();
+            telemetry.addData(TAG, "Waiting for start ...");
+            telemetry.update();
 
-        // Perform Team Prop recognition.
-        RobotConstantsCenterStage.TeamPropLocation location = teamPropAuto.runTeamPropRecognition();
+            // Wait for the game to start (driver presses PLAY)
+            waitForStart();
 
-        RobotLogCommon.d(TAG, "Team Prop Location " + location);
-        telemetry.addData("Team Prop Location: ", location);
-        telemetry.addData("Path", "Complete");
-        telemetry.update();
-        sleep(1000);  // pause to display final telemetry message.
+            // Perform Team Prop recognition.
+            RobotConstantsCenterStage.TeamPropLocation location = teamPropAuto.runTeamPropRecognition();
+
+            RobotLogCommon.d(TAG, "Team Prop Location " + location);
+            telemetry.addData("Team Prop Location: ", location);
+            telemetry.addData("Path", "Complete");
+            telemetry.update();
+            sleep(1000);  // pause to display final telemetry message.
+        } finally {
+            teamPropAuto.close();
+        }
     }
 
 }
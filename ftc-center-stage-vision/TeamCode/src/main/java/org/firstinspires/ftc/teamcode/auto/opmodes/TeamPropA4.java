@@ -62,20 +62,27 @@ public class TeamPropA4 extends LinearOpMode {
             throw new AutonomousRobotException(TAG, e.getMessage());
         }
 
+        try {
+            // Look for the Team Prop while waiting for START.
+            teamPropAuto.startPreStartRecognition();
+
             telemetry.addData(TAG, "Waiting for start ...");
-        telemetry.update();
+            telemetry.update();
 
-        // Wait for the game to start (driver presses PLAY)
-        waitForStart();
+            // Wait for the game to start (driver presses PLAY)
+            waitForStart();
 
-        // Perform Team Prop recognition.
-        RobotConstantsCenterStage.TeamPropLocation location = teamPropAuto.runTeamPropRecognition();
+            // Perform Team Prop recognition.
+            RobotConstantsCenterStage.TeamPropLocation location = teamPropAuto.runTeamPropRecognition();
 
-        RobotLogCommon.d(TAG, "Team Prop Location " + location);
-        telemetry.addData("Team Prop Location: ", location);
-        telemetry.addData("Path", "Complete");
-        telemetry.update();
-        sleep(1000);  // pause to display final telemetry message.
+            RobotLogCommon.d(TAG, "Team Prop Location " + location);
+            telemetry.addData("Team Prop Location: ", location);
+            telemetry.addData("Path", "Complete");
+            telemetry.update();
+            sleep(1000);  // pause to display final telemetry message.
+        } finally {
+            teamPropAuto.close();
+        }
     }
 
 }
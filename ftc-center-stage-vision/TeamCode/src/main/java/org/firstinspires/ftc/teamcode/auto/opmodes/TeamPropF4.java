@@ -61,20 +61,28 @@ public class TeamPropF4 extends LinearOpMode {
         } catch (ParserConfigurationException | SAXException | XPathException | IOException e) {
             throw new AutonomousRobotException(TAG, e.getMessage());
         }
-        telemetry.addData(TAG, "Waiting for start ...");
-        telemetry.update();
 
-        // Wait for the game to start (driver presses PLAY)
-        waitForStart();
+        try {
+            // Look for the Team Prop while waiting for START.
+            teamPropAuto.startPreStartRecognition();
 
-        // Perform Team Prop recognition.
-        RobotConstantsCenterStage.TeamPropLocation location = teamPropAuto.runTeamPropRecognition();
+            telemetry.addData(TAG, "Waiting for start ...");
+            telemetry.update();
 
-        RobotLogCommon.d(TAG, "Team Prop Location " + location);
-        telemetry.addData("Team Prop Location: ", location);
-        telemetry.addData("Path", "Complete");
-        telemetry.update();
-        sleep(1000);  // pause to display final telemetry message.
+            // Wait for the game to start (driver presses PLAY)
+            waitForStart();
+
+            // Perform Team Prop recognition.
+            RobotConstantsCenterStage.TeamPropLocation location = teamPropAuto.runTeamPropRecognition();
+
+            RobotLogCommon.d(TAG, "Team Prop Location " + location);
+            telemetry.addData("Team Prop Location: ", location);
+            telemetry.addData("Path", "Complete");
+            telemetry.update();
+            sleep(1000);  // pause to display final telemetry message.
+        } finally {
+            teamPropAuto.close();
+        }
     }
 
 }
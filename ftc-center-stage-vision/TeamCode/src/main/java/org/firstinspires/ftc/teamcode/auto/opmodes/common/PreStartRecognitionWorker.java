@@ -0,0 +1,98 @@
+package org.firstinspires.ftc.teamcode.auto.opmodes.common;
+
+import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
+
+import org.firstinspires.ftc.ftcdevcommon.AutoWorker;
+import org.firstinspires.ftc.teamcode.auto.vision.EnsembleRecognition;
+import org.firstinspires.ftc.teamcode.auto.vision.RecognitionWorkspace;
+import org.firstinspires.ftc.teamcode.auto.vision.SceneChangeDetector;
+import org.firstinspires.ftc.teamcode.auto.vision.TeamPropRecognition;
+import org.firstinspires.ftc.teamcode.auto.vision.TeamPropReturn;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.robot.device.camera.RawFrameAccess;
+import org.firstinspires.ftc.teamcode.robot.device.camera.RawFrameProcessor;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Runs team prop recognition repeatedly during the init phase of an
+// Autonomous OpMode so that a result is already available at START.
+// While the ROI does not change the previous result is reused instead
+// of running recognition again. Consensus recognition always runs in
+// full because its frames must be recognized independently.
+public class PreStartRecognitionWorker extends AutoWorker<Void> {
+    private static final String TAG = PreStartRecognitionWorker.class.getSimpleName();
+
+    // The field does not change before START so there's no need to
+    // analyze every frame; this also keeps the log to a reasonable size.
+    private static final long RECOGNITION_INTERVAL_MS = 200;
+
+    private final LinearOpMode linear;
+    private final RawFrameProcessor rawFrameProcessor;
+    private final RobotConstantsCenterStage.TeamPropRecognitionPath recognitionPath;
+    private final TeamPropParameters teamPropParameters;
+    private final SpikeWindowMapping spikeWindowMapping;
+    private final TeamPropRecognition teamPropRecognition;
+    private final EnsembleRecognition ensembleRecognition; // may be null
+    private final SceneChangeDetector sceneChangeDetector = new SceneChangeDetector();
+    private final AtomicReference<TeamPropReturn> latestResult = new AtomicReference<>(); // null until the first success
+
+    public PreStartRecognitionWorker(LinearOpMode pLinear, RobotConstants.Alliance pAlliance,
+                                     RawFrameProcessor pRawFrameProcessor,
+                                     TeamPropParameters pTeamPropParameters,
+                                     SpikeWindowMapping pSpikeWindowMapping,
+                                     RecognitionWorkspace pWorkspace,
+                                     EnsembleRecognition pEnsembleRecognition) {
+        linear = pLinear;
+        rawFrameProcessor = pRawFrameProcessor;
+        recognitionPath = pSpikeWindowMapping.recognitionPath;
+        teamPropParameters = pTeamPropParameters;
+        spikeWindowMapping = pSpikeWindowMapping;
+        teamPropRecognition = new TeamPropRecognition(pAlliance, false, pWorkspace);
+        ensembleRecognition = pEnsembleRecognition;
+    }
+
+    // Returns the most recent successful result, which includes the
+    // FrameInfo of the image it is based on, or null if there is none.
+    public TeamPropReturn getLatestResult() {
+        return latestResult.get();
+    }
+
+    @Override
+    public Void call() throws InterruptedException {
+        RobotLogCommon.d(TAG, "Starting pre-start team prop recognition");
+        long capturedNoEarlierThanNanos = 0;
+        int recognitionCount = 0;
+        try {
+            while (!stopThreadRequested() && !linear.isStopRequested()) {
+                RawFrameAccess rawFrameAccess = new RawFrameAccess(rawFrameProcessor, capturedNoEarlierThanNanos);
+                TeamPropReturn teamPropReturn = ensembleRecognition != null ?
+                        ensembleRecognition.recognizeTeamProp(rawFrameAccess, false, sceneChangeDetector) :
+                        spikeWindowMapping.consensusParameters != null ?
+                        teamPropRecognition.recognizeTeamPropConsensus(rawFrameAccess, recognitionPath, teamPropParameters, spikeWindowMapping) :
+                        teamPropRecognition.recognizeTeamProp(rawFrameAccess, recognitionPath, teamPropParameters, spikeWindowMapping, sceneChangeDetector);
+                if (teamPropReturn.frameInfo == null)
+                    continue; // no frame was analyzed
+
+                // Throttle after every analyzed frame, successful or not,
+                // so that a failing recognition does not run on every
+                // frame at the expense of AprilTag.
+                recognitionCount++;
+                capturedNoEarlierThanNanos = teamPropReturn.frameInfo.captureTimeNanos +
+                        TimeUnit.MILLISECONDS.toNanos(RECOGNITION_INTERVAL_MS);
+                if (teamPropReturn.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL)
+                    latestResult.set(teamPropReturn);
+            }
+        } finally {
+            sceneChangeDetector.release();
+        }
+
+        RobotLogCommon.d(TAG, "Pre-start team prop recognition stopped after " + recognitionCount + " recognitions");
+        return null;
+    }
+
+}
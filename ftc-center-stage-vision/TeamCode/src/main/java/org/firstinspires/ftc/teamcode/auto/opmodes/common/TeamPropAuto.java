@@ -33,10 +33,18 @@ import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 
 import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.Threading;
+import org.firstinspires.ftc.ftcdevcommon.platform.android.TimeStamp;
 import org.firstinspires.ftc.ftcdevcommon.platform.android.WorkingDirectory;
 import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
 import org.firstinspires.ftc.teamcode.xml.BackdropParameters;
 import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.auto.vision.EnsembleRecognition;
+import org.firstinspires.ftc.teamcode.auto.vision.FrameJournal;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageFileWriter;
+import org.firstinspires.ftc.teamcode.auto.vision.MatTracker;
+import org.firstinspires.ftc.teamcode.auto.vision.ProcessingScale;
+import org.firstinspires.ftc.teamcode.auto.vision.RecognitionWorkspace;
 import org.firstinspires.ftc.teamcode.auto.vision.TeamPropRecognition;
 import org.firstinspires.ftc.teamcode.auto.vision.TeamPropReturn;
 import org.firstinspires.ftc.teamcode.xml.BackdropParametersXML;
@@ -45,6 +53,7 @@ import org.firstinspires.ftc.teamcode.common.RobotConstants;
 import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
 import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
 import org.firstinspires.ftc.teamcode.xml.SpikeWindowMappingXML;
+import org.firstinspires.ftc.teamcode.xml.VisionParameters;
 import org.firstinspires.ftc.teamcode.robot.FTCRobotConfigVision;
 import org.firstinspires.ftc.teamcode.robot.device.camera.RawFrameAccess;
 import org.firstinspires.ftc.teamcode.robot.device.camera.RawFrameProcessor;
@@ -55,9 +64,13 @@ import org.firstinspires.ftc.vision.apriltag.AprilTagProcessor;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathException;
@@ -65,6 +78,18 @@ import javax.xml.xpath.XPathException;
 public class TeamPropAuto {
     private static final String TAG = TeamPropAuto.class.getSimpleName();
 
+    // A result from pre-start recognition is used at START only if the
+    // image it is based on is no older than this.
+    private static final long PRE_START_RESULT_MAX_AGE_MS = 500;
+
+    // The image files from recognition are written in the background.
+    // One recognition produces up to about a dozen files; if the writer
+    // falls behind, the oldest files are the least interesting.
+    private static final int IMAGE_FILE_QUEUE_CAPACITY = 24;
+    private static final int IMAGE_FILE_ENCODER_THREADS = 1;
+    private static final ImageFileWriter.OverflowPolicy IMAGE_FILE_OVERFLOW_POLICY = ImageFileWriter.OverflowPolicy.DROP_OLDEST;
+    private static final long IMAGE_FILE_DRAIN_TIMEOUT_MS = 2000;
+
     private final LinearOpMode linear;
     private final RobotConstants.Alliance alliance;
     private final FTCRobotConfigVision robot;
@@ -77,6 +102,17 @@ public class TeamPropAuto {
 
     RobotConstantsCenterStage.InternalWebcamId openWebcam = RobotConstantsCenterStage.InternalWebcamId.WEBCAM_NPOS;
 
+    // Shared by pre-start recognition and recognition after START,
+    // which never run at the same time.
+    private final RecognitionWorkspace recognitionWorkspace;
+    private final TeamPropRecognition teamPropRecognition;
+    private final EnsembleRecognition ensembleRecognition; // null unless recognition is by ensemble
+
+    private FrameJournal frameJournal; // null if not in use
+    private RawFrameProcessor rawFrameProcessor; // null if the front webcam is not configured
+    private PreStartRecognitionWorker preStartWorker;
+    private CompletableFuture<Void> preStartFuture;
+
     public TeamPropAuto(LinearOpMode pLinear, RobotConstants.Alliance pAlliance,
                         RobotConstantsCenterStage.OpMode pOpMode)
             throws ParserConfigurationException, SAXException, XPathException, IOException {
@@ -111,6 +147,33 @@ public class TeamPropAuto {
         if (opModeSpikeWindowMapping == null)
             throw new AutonomousRobotException(TAG, "Element 'FIND_TEAM_PROP' not found under OpMode " + pOpMode);
 
+        // Account for the Mats used by the vision code only when the
+        // log is at its most detailed level.
+        MatTracker.setEnabled(RobotLogCommon.isLoggable("vv"));
+        ImageFileWriter.start(IMAGE_FILE_QUEUE_CAPACITY, IMAGE_FILE_ENCODER_THREADS, IMAGE_FILE_OVERFLOW_POLICY);
+
+        // With <frame_journal> in RobotAction.xml all of the images from
+        // one run go into a single journal, which is much cheaper to write
+        // than the individual PNG files. Use FrameJournalExtractor to turn
+        // the journal into PNG files. If the journal cannot be opened the
+        // PNG files are written as before.
+        if (opModeSpikeWindowMapping.frameJournal) {
+            String journalPath = workingDirectory + RobotConstants.IMAGE_DIR + pOpMode + "_" +
+                    TimeStamp.getDateTimeStamp(new Date()) + ".journal";
+            try {
+                frameJournal = new FrameJournal(journalPath);
+                ImageFileWriter.attachJournal(frameJournal);
+            } catch (IOException iox) {
+                RobotLogCommon.d(TAG, "Unable to open the frame journal " + journalPath + ": " + iox);
+            }
+        }
+
+        recognitionWorkspace = new RecognitionWorkspace(opModeSpikeWindowMapping.imageParameters,
+                new ProcessingScale(opModeSpikeWindowMapping.processingScale));
+        teamPropRecognition = new TeamPropRecognition(alliance, recognitionWorkspace);
+        ensembleRecognition = opModeSpikeWindowMapping.ensembleParameters == null ? null :
+                new EnsembleRecognition(alliance, teamPropParameters, opModeSpikeWindowMapping);
+
         // Read the parameters for the backdrop from the xml file.
         BackdropParametersXML backdropParametersXML = new BackdropParametersXML(xmlDirectory);
         backdropParameters = backdropParametersXML.getBackdropParameters();
@@ -132,7 +195,40 @@ public class TeamPropAuto {
                 // raw frames and AprilTags.
                 EnumMap<RobotConstantsCenterStage.ProcessorIdentifier, Pair<VisionProcessor, Boolean>> assignedProcessors =
                         new EnumMap<>(RobotConstantsCenterStage.ProcessorIdentifier.class);
-                VisionProcessor rawFrameProcessor = new RawFrameProcessor.Builder().build();
+                // Autonomous reads only a few frames so there is no point
+                // in converting every frame the webcam delivers.
+                RawFrameProcessor.Builder rawFrameBuilder = new RawFrameProcessor.Builder()
+                        .setCaptureMode(RawFrameProcessor.CaptureMode.ON_DEMAND);
+
+                // If the team prop is to be found with this webcam then
+                // capture only the ROI from RobotAction.xml and, if the
+                // recognition path only uses the inverted color channel
+                // for the alliance, only that channel. But the original
+                // image, which is written at ALL and FAILURES_ONLY, must
+                // stay a BGR camera frame so that the images of a match
+                // can be replayed through any recognition path.
+                VisionParameters.ImageParameters imageParameters = opModeSpikeWindowMapping.imageParameters;
+                if (RobotConstantsCenterStage.InternalWebcamId.valueOf(imageParameters.image_source.toUpperCase()) ==
+                        RobotConstantsCenterStage.InternalWebcamId.FRONT_WEBCAM) {
+                    if (imageParameters.resolution_width == frontWebcamConfiguration.resolutionWidth &&
+                            imageParameters.resolution_height == frontWebcamConfiguration.resolutionHeight)
+                        rawFrameBuilder.setCaptureROI(imageParameters.image_roi);
+
+                    boolean acceptsSingleChannel = ensembleRecognition != null ? ensembleRecognition.acceptsSingleChannel() :
+                            teamPropRecognition.acceptsSingleChannel(opModeSpikeWindowMapping.recognitionPath,
+                                    teamPropParameters, opModeSpikeWindowMapping);
+                    RobotConstantsCenterStage.ArtifactLevel artifactLevel = opModeSpikeWindowMapping.artifactLevel;
+                    boolean writesOriginalImage = artifactLevel == RobotConstantsCenterStage.ArtifactLevel.ALL ||
+                            artifactLevel == RobotConstantsCenterStage.ArtifactLevel.FAILURES_ONLY;
+                    if (acceptsSingleChannel && !writesOriginalImage) {
+                        if (alliance == RobotConstants.Alliance.RED)
+                            rawFrameBuilder.setFrameFormat(RawFrameProcessor.FrameFormat.BLUE_INVERTED);
+                        else if (alliance == RobotConstants.Alliance.BLUE)
+                            rawFrameBuilder.setFrameFormat(RawFrameProcessor.FrameFormat.RED_INVERTED);
+                    }
+                }
+
+                rawFrameProcessor = rawFrameBuilder.build();
                 assignedProcessors.put(RobotConstantsCenterStage.ProcessorIdentifier.RAW_FRAME, Pair.create(rawFrameProcessor, true));
 
                 if (frontWebcamConfiguration.processorIdentifiers.contains(RobotConstantsCenterStage.ProcessorIdentifier.APRIL_TAG)) {
@@ -157,10 +253,112 @@ public class TeamPropAuto {
         }
     }
 
+    // Call during the init phase, i.e. before waitForStart(), to keep
+    // recognizing the team prop in the background until START.
+    public void startPreStartRecognition() {
+        if (preStartWorker != null)
+            throw new AutonomousRobotException(TAG, "Pre-start recognition is already running");
+
+        preStartWorker = new PreStartRecognitionWorker(linear, alliance, getRawFrameProcessor(),
+                teamPropParameters, opModeSpikeWindowMapping, recognitionWorkspace, ensembleRecognition);
+        preStartFuture = Threading.launchAsync(preStartWorker);
+    }
+
     public RobotConstantsCenterStage.TeamPropLocation
     runTeamPropRecognition() throws InterruptedException {
+        // Unless a recent result from pre-start recognition is available
+        // any frame captured before this point, e.g. during init, must not
+        // be used to find the team prop.
+        long recognitionStartNanos = System.nanoTime();
+        RawFrameProcessor rawFrameProcessor = getRawFrameProcessor();
+
+        TeamPropReturn teamPropReturn = null;
+        if (preStartWorker != null) {
+            preStartWorker.stopThread();
+            TeamPropReturn preStartReturn = preStartWorker.getLatestResult();
+            if (preStartReturn != null &&
+                    recognitionStartNanos - preStartReturn.frameInfo.captureTimeNanos <= TimeUnit.MILLISECONDS.toNanos(PRE_START_RESULT_MAX_AGE_MS)) {
+                RobotLogCommon.d(TAG, "Using the pre-start result from " + preStartReturn.frameInfo + ", captured " +
+                        TimeUnit.NANOSECONDS.toMillis(recognitionStartNanos - preStartReturn.frameInfo.captureTimeNanos) + " ms before start");
+                teamPropReturn = preStartReturn;
+            } else {
+                // The worker must finish before we can take a frame of
+                // our own; it waits for at most one more frame. If that
+                // frame was captured after START its result is used.
+                RobotLogCommon.d(TAG, "No recent pre-start result; waiting for a new frame");
+                waitForPreStartRecognition();
+                TeamPropReturn finalPreStartReturn = preStartWorker.getLatestResult();
+                if (finalPreStartReturn != null && finalPreStartReturn.frameInfo.captureTimeNanos >= recognitionStartNanos) {
+                    RobotLogCommon.d(TAG, "Using the final pre-start result from " + finalPreStartReturn.frameInfo);
+                    teamPropReturn = finalPreStartReturn;
+                }
+            }
+
+            // If the pre-start result was used the worker may still be
+            // finishing its last frame; close() waits for it.
+            preStartWorker = null;
+        }
+
+        if (teamPropReturn == null)
+            teamPropReturn = recognizeTeamProp(rawFrameProcessor, recognitionStartNanos);
+
+        RobotConstantsCenterStage.TeamPropLocation finalTeamPropLocation;
+        if (teamPropReturn.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR ||
+                teamPropReturn.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL) {
+            // Something went wrong during recognition but don't crash; use the default location of CENTER_SPIKE.
+            finalTeamPropLocation = RobotConstantsCenterStage.TeamPropLocation.CENTER_SPIKE;
+            linear.telemetry.addLine("Error in computer vision subsystem; using default location");
+            linear.telemetry.update();
+            RobotLogCommon.d(TAG, "Error in computer vision subsystem; using default location of CENTER_SPIKE");
+        } else {
+            finalTeamPropLocation = teamPropReturn.teamPropLocation;
+        }
 
-        // Find the location of the Team Prop.
+        return finalTeamPropLocation;
+    }
+
+    // Call at the end of the OpMode to release the native memory used
+    // for recognition.
+    public void close() throws InterruptedException {
+        if (preStartWorker != null) {
+            preStartWorker.stopThread();
+            preStartWorker = null;
+        }
+
+        waitForPreStartRecognition();
+        if (ensembleRecognition != null)
+            ensembleRecognition.close();
+        recognitionWorkspace.release();
+        if (rawFrameProcessor != null)
+            rawFrameProcessor.close();
+        ImageFileWriter.stop(IMAGE_FILE_DRAIN_TIMEOUT_MS);
+        if (frameJournal != null) {
+            ImageFileWriter.detachJournal();
+            try {
+                frameJournal.close();
+            } catch (IOException iox) {
+                RobotLogCommon.d(TAG, "Exception on closing the frame journal " + iox);
+            }
+            frameJournal = null;
+        }
+        MatTracker.report("at the end of the OpMode");
+    }
+
+    private void waitForPreStartRecognition() throws InterruptedException {
+        if (preStartFuture == null)
+            return;
+
+        try {
+            Threading.getFutureCompletion(preStartFuture);
+        } catch (IOException | TimeoutException ex) {
+            RobotLogCommon.d(TAG, "Exception on completion of pre-start recognition " + ex);
+        } finally {
+            preStartFuture = null;
+        }
+    }
+
+    private RawFrameProcessor getRawFrameProcessor() {
+        // Get the webcam that is used to find the Team Prop.
         String webcamIdString = opModeSpikeWindowMapping.imageParameters.image_source.toUpperCase();
         RobotConstantsCenterStage.InternalWebcamId webcamId =
                 RobotConstantsCenterStage.InternalWebcamId.valueOf(webcamIdString);
@@ -175,7 +373,14 @@ public class TeamPropAuto {
         if (rawFrameProcessor == null)
             throw new AutonomousRobotException(TAG, "The RAW_FRAME processor is not active");
 
-        RawFrameAccess rawFrameAccess = new RawFrameAccess((RawFrameProcessor) rawFrameProcessor);
+        return (RawFrameProcessor) rawFrameProcessor;
+    }
+
+    private TeamPropReturn recognizeTeamProp(RawFrameProcessor pRawFrameProcessor, long pCapturedNoEarlierThanNanos) throws InterruptedException {
+        RawFrameAccess rawFrameAccess = new RawFrameAccess(pRawFrameProcessor, pCapturedNoEarlierThanNanos);
+
+        if (ensembleRecognition != null)
+            return ensembleRecognition.recognizeTeamProp(rawFrameAccess, true);
 
         // Get the recognition path from the XML file.
         RobotConstantsCenterStage.TeamPropRecognitionPath teamPropRecognitionPath =
@@ -183,21 +388,9 @@ public class TeamPropAuto {
         RobotLogCommon.d(TAG, "Recognition path " + teamPropRecognitionPath);
 
         // Perform image recognition.
-        TeamPropRecognition teamPropRecognition = new TeamPropRecognition(alliance);
-        TeamPropReturn teamPropReturn = teamPropRecognition.recognizeTeamProp(rawFrameAccess, teamPropRecognitionPath, teamPropParameters, opModeSpikeWindowMapping);
-        RobotConstantsCenterStage.TeamPropLocation finalTeamPropLocation;
-        if (teamPropReturn.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR ||
-                teamPropReturn.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL) {
-            // Something went wrong during recognition but don't crash; use the default location of CENTER_SPIKE.
-            finalTeamPropLocation = RobotConstantsCenterStage.TeamPropLocation.CENTER_SPIKE;
-            linear.telemetry.addLine("Error in computer vision subsystem; using default location");
-            linear.telemetry.update();
-            RobotLogCommon.d(TAG, "Error in computer vision subsystem; using default location of CENTER_SPIKE");
-        } else {
-            finalTeamPropLocation = teamPropReturn.teamPropLocation;
-        }
-
-        return finalTeamPropLocation;
+        if (opModeSpikeWindowMapping.consensusParameters != null)
+            return teamPropRecognition.recognizeTeamPropConsensus(rawFrameAccess, teamPropRecognitionPath, teamPropParameters, opModeSpikeWindowMapping);
+        return teamPropRecognition.recognizeTeamProp(rawFrameAccess, teamPropRecognitionPath, teamPropParameters, opModeSpikeWindowMapping);
     }
 
 }
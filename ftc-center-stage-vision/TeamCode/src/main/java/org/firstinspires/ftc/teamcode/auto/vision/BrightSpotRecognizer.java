@@ -0,0 +1,101 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.xml.VisionParameters;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Objects;
+
+// The bright spot paths blur a single-channel image and take its
+// brightest point as the location of the Team Prop. Subclasses supply
+// the image. With the INTEGRAL_BOX engine the brightest box of the
+// size of the blur kernel stands in for the peak of the blur.
+// See --
+// https://pyimagesearch.com/2014/09/29/finding-brightest-spot-image-using-python-opencv/
+public abstract class BrightSpotRecognizer extends SpikeWindowRecognizer {
+
+    private static final String TAG = BrightSpotRecognizer.class.getSimpleName();
+
+    protected final VisionParameters.GrayParameters allianceGrayParameters;
+    protected final double allianceBlurKernel;
+    private final Size blurKernelSize;
+    private final RobotConstantsCenterStage.BrightSpotEngine engine;
+    private final BrightSpotSearch brightSpotSearch;
+    private final String filenameSuffix; // distinguishes the output files of the paths
+
+    protected BrightSpotRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                   SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace,
+                                   String pFilenameSuffix) {
+        super(pAlliance, pSpikeWindowMapping, pWorkspace);
+        TeamPropParameters.BrightSpotParameters brightSpotParameters = Objects.requireNonNull(pTeamPropParameters.brightSpotParameters,
+                TAG + " No parameters for the bright spot paths");
+        allianceGrayParameters = forAlliance(pAlliance, brightSpotParameters.redGrayParameters, brightSpotParameters.blueGrayParameters);
+        allianceBlurKernel = forAlliance(pAlliance, brightSpotParameters.redBlurKernel, brightSpotParameters.blueBlurKernel);
+        blurKernelSize = new Size(allianceBlurKernel, allianceBlurKernel);
+        engine = brightSpotParameters.engine;
+        brightSpotSearch = engine == RobotConstantsCenterStage.BrightSpotEngine.INTEGRAL_BOX ? new BrightSpotSearch(pWorkspace) : null;
+        filenameSuffix = pFilenameSuffix;
+    }
+
+    // Returns the single-channel image in which to look for the bright
+    // spot. The image may be modified.
+    protected abstract Mat brightSpotSource(Mat pImageROI, String pOutputFilenamePreamble);
+
+    @Override
+    public TeamPropReturn recognize(Mat pImageROI, String pOutputFilenamePreamble) {
+        Mat source = brightSpotSource(pImageROI, pOutputFilenamePreamble);
+
+        // Sharpening the image does not improve the results.
+        //Mat sharp = sharpen(source, pOutputFilenamePreamble);
+
+        Core.MinMaxLocResult brightResult;
+        if (engine == RobotConstantsCenterStage.BrightSpotEngine.INTEGRAL_BOX) {
+            brightResult = brightSpotSearch.findBrightSpot(source, (int) allianceBlurKernel);
+
+            // The box-filtered image is only needed for the output file.
+            if (pOutputFilenamePreamble != null) {
+                Imgproc.blur(source, workspace.blurred, blurKernelSize);
+                String blurFilename = pOutputFilenamePreamble + filenameSuffix + "_BLUR.png";
+                RobotLogCommon.d(TAG, "Writing " + blurFilename);
+                ImageFileWriter.write(blurFilename, workspace.blurred);
+            }
+        } else {
+            Mat bright = workspace.blurred;
+            Imgproc.GaussianBlur(source, bright, blurKernelSize, 0);
+
+            if (pOutputFilenamePreamble != null) {
+                String blurFilename = pOutputFilenamePreamble + filenameSuffix + "_BLUR.png";
+                RobotLogCommon.d(TAG, "Writing " + blurFilename);
+                ImageFileWriter.write(blurFilename, bright);
+            }
+
+            brightResult = Core.minMaxLoc(bright);
+        }
+
+        RobotLogCommon.d(TAG, "Bright spot location " + brightResult.maxLoc + ", value " + brightResult.maxVal);
+
+        Mat brightSpotOut = colorImageForOutput(pImageROI, pOutputFilenamePreamble);
+        if (brightSpotOut != null) {
+            Imgproc.circle(brightSpotOut, brightResult.maxLoc, (int) allianceBlurKernel, new Scalar(0, 255, 0));
+            String brightSpotFilename = pOutputFilenamePreamble + filenameSuffix + "_BRIGHT.png";
+            RobotLogCommon.d(TAG, "Writing " + brightSpotFilename);
+            ImageFileWriter.write(brightSpotFilename, brightSpotOut);
+        }
+
+        // If the bright spot is under the threshold then assume no Team Prop is present.
+        if (brightResult.maxVal < allianceGrayParameters.threshold_low)
+            return nposReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, "Bright spot value was under the threshold",
+                    colorImageForOutput(pImageROI, pOutputFilenamePreamble), pOutputFilenamePreamble);
+
+        return lookThroughWindows(brightSpotOut, brightResult.maxLoc, pOutputFilenamePreamble);
+    }
+
+}
@@ -0,0 +1,95 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+// Finds the brightest k x k box in a single-channel 8-bit image from
+// its integral image. The mean of any box takes four lookups, so the
+// cost does not depend on the size of the kernel, unlike the large
+// GaussianBlur it replaces. The box centers are searched coarse to
+// fine: first on a grid with a spacing of a quarter of the kernel,
+// then pixel by pixel around the best center on the grid. Boxes at
+// the edges of the image are clipped and their mean is taken over the
+// pixels inside the image.
+// An instance may only be used by one thread at a time.
+public class BrightSpotSearch {
+    private static final String TAG = BrightSpotSearch.class.getSimpleName();
+
+    private final Mat integral; // from the workspace
+    private int[] sums = new int[0];
+    private int stride; // the width of the integral image
+    private int imageRows;
+    private int imageCols;
+
+    public BrightSpotSearch(RecognitionWorkspace pWorkspace) {
+        integral = pWorkspace.integral;
+    }
+
+    // Returns the center of the brightest box and its mean value in
+    // maxLoc and maxVal, as from Core.minMaxLoc on a blurred image.
+    public Core.MinMaxLocResult findBrightSpot(Mat pSource, int pKernel) {
+        if (pSource.type() != CvType.CV_8UC1)
+            throw new AutonomousRobotException(TAG, "Expected a single-channel 8-bit image");
+
+        // The sum over 255 * 640 * 480 still fits in an int.
+        Imgproc.integral(pSource, integral, CvType.CV_32S);
+        imageRows = pSource.rows();
+        imageCols = pSource.cols();
+        stride = imageCols + 1;
+        int size = (imageRows + 1) * stride;
+        if (sums.length != size)
+            sums = new int[size];
+        integral.get(0, 0, sums);
+
+        int kernel = Math.max(1, pKernel);
+        int half = kernel / 2;
+        int step = Math.max(1, kernel / 4);
+
+        // Coarse pass over the grid.
+        int bestX = 0;
+        int bestY = 0;
+        double bestMean = -1;
+        for (int y = 0; y < imageRows; y += step)
+            for (int x = 0; x < imageCols; x += step) {
+                double mean = boxMean(x, y, half, kernel);
+                if (mean > bestMean) {
+                    bestMean = mean;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+
+        // Fine pass around the best center on the grid.
+        int coarseX = bestX;
+        int coarseY = bestY;
+        for (int y = Math.max(0, coarseY - step + 1); y < Math.min(imageRows, coarseY + step); y++)
+            for (int x = Math.max(0, coarseX - step + 1); x < Math.min(imageCols, coarseX + step); x++) {
+                double mean = boxMean(x, y, half, kernel);
+                if (mean > bestMean) {
+                    bestMean = mean;
+                    bestX = x;
+                    bestY = y;
+                }
+            }
+
+        Core.MinMaxLocResult result = new Core.MinMaxLocResult();
+        result.maxLoc = new Point(bestX, bestY);
+        result.maxVal = bestMean;
+        return result;
+    }
+
+    // The mean of the box centered on (pX, pY), clipped to the image.
+    private double boxMean(int pX, int pY, int pHalf, int pKernel) {
+        int x1 = Math.max(0, pX - pHalf);
+        int y1 = Math.max(0, pY - pHalf);
+        int x2 = Math.min(imageCols, pX - pHalf + pKernel);
+        int y2 = Math.min(imageRows, pY - pHalf + pKernel);
+        int sum = sums[y2 * stride + x2] - sums[y1 * stride + x2] - sums[y2 * stride + x1] + sums[y1 * stride + x1];
+        return (double) sum / ((x2 - x1) * (y2 - y1));
+    }
+
+}
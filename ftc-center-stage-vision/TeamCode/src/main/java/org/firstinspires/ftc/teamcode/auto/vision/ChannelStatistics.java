@@ -0,0 +1,157 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Arrays;
+
+// Statistics for one channel of an 8-bit image, optionally under a
+// mask, from a 256-bin counting histogram. A single pass over the
+// pixels yields the median, any percentile, the mean and the minimum
+// and maximum values; there's no need to sort the pixels.
+// The pixel buffers are kept from one call to the next so that there
+// are no allocations as long as the image size does not change. An
+// instance may only be used by one thread at a time.
+public class ChannelStatistics {
+    private static final String TAG = ChannelStatistics.class.getSimpleName();
+
+    private final int[] histogram = new int[256];
+    private byte[] pixels = new byte[0];
+    private byte[] maskPixels = new byte[0];
+
+    private long count;
+    private long sum;
+    private int min;
+    private int max;
+
+    // Statistics for all of the pixels in a single-channel image.
+    public ChannelStatistics compute(Mat pImage) {
+        return compute(pImage, 0, null);
+    }
+
+    // Statistics for the selected channel of pImage. If pMask is not
+    // null and not empty, only the pixels for which the mask is non-zero
+    // are included. The mask must be a single-channel 8-bit image the
+    // same size as pImage.
+    public ChannelStatistics compute(Mat pImage, int pChannel, Mat pMask) {
+        int channels = pImage.channels();
+        if (pImage.depth() != CvType.CV_8U || pImage.dims() != 2)
+            throw new AutonomousRobotException(TAG, "Expected a 2-dimensional 8-bit image");
+
+        if (pChannel < 0 || pChannel >= channels)
+            throw new AutonomousRobotException(TAG, "Channel " + pChannel + " is not in an image with " + channels + " channels");
+
+        boolean masked = pMask != null && !pMask.empty();
+        if (masked && (pMask.type() != CvType.CV_8UC1 || pMask.rows() != pImage.rows() || pMask.cols() != pImage.cols()))
+            throw new AutonomousRobotException(TAG, "The mask must be a single-channel 8-bit image the same size as the image");
+
+        // Read a continuous image in one call; otherwise, e.g. for an
+        // ROI, read it one row at a time.
+        boolean wholeImage = pImage.isContinuous() && (!masked || pMask.isContinuous());
+        int rows = wholeImage ? 1 : pImage.rows();
+        int pixelsPerRow = wholeImage ? (int) pImage.total() : pImage.cols();
+        if (pixels.length != pixelsPerRow * channels)
+            pixels = new byte[pixelsPerRow * channels];
+        if (masked && maskPixels.length != pixelsPerRow)
+            maskPixels = new byte[pixelsPerRow];
+
+        Arrays.fill(histogram, 0);
+        for (int row = 0; row < rows; row++) {
+            pImage.get(row, 0, pixels);
+            if (masked) {
+                pMask.get(row, 0, maskPixels);
+                for (int i = 0, p = pChannel; i < pixelsPerRow; i++, p += channels)
+                    if (maskPixels[i] != 0)
+                        histogram[pixels[p] & 0xFF]++; // bytes are signed in Java
+            } else {
+                for (int p = pChannel; p < pixels.length; p += channels)
+                    histogram[pixels[p] & 0xFF]++;
+            }
+        }
+
+        count = 0;
+        sum = 0;
+        min = -1;
+        max = -1;
+        for (int value = 0; value < histogram.length; value++) {
+            if (histogram[value] == 0)
+                continue;
+
+            if (min == -1)
+                min = value;
+            max = value;
+            count += histogram[value];
+            sum += (long) value * histogram[value];
+        }
+
+        return this;
+    }
+
+    // The number of pixels included in the statistics.
+    public long getCount() {
+        return count;
+    }
+
+    // For compatibility with the previous sort-based implementation
+    // the median is the integer average of the two values at the
+    // positions n / 2 and n / 2 - 1 of the sorted pixels.
+    public int getMedian() {
+        checkCount();
+        if (count == 1)
+            return min;
+        return (valueAtRank(count / 2) + valueAtRank(count / 2 - 1)) / 2;
+    }
+
+    // The median of the inverted channel, i.e. of 255 - value, by the
+    // same definition as getMedian() but without inverting the image.
+    public int getInvertedMedian() {
+        checkCount();
+        if (count == 1)
+            return 255 - min;
+        return ((255 - valueAtRank(count - 1 - count / 2)) + (255 - valueAtRank(count - count / 2))) / 2;
+    }
+
+    // Nearest-rank percentile, pPercentile in the range 0 - 100.
+    public int getPercentile(double pPercentile) {
+        checkCount();
+        if (pPercentile < 0 || pPercentile > 100)
+            throw new AutonomousRobotException(TAG, "Percentile " + pPercentile + " is out of range");
+
+        long rank = (long) Math.ceil(pPercentile / 100.0 * count) - 1;
+        return valueAtRank(Math.max(0, Math.min(rank, count - 1)));
+    }
+
+    public double getMean() {
+        checkCount();
+        return (double) sum / count;
+    }
+
+    public int getMin() {
+        checkCount();
+        return min;
+    }
+
+    public int getMax() {
+        checkCount();
+        return max;
+    }
+
+    // The value at the 0-based position pRank of the sorted pixels.
+    private int valueAtRank(long pRank) {
+        long cumulative = 0;
+        for (int value = min; value <= max; value++) {
+            cumulative += histogram[value];
+            if (cumulative > pRank)
+                return value;
+        }
+
+        return max; // not reached
+    }
+
+    private void checkCount() {
+        if (count == 0)
+            throw new AutonomousRobotException(TAG, "No pixels in the image or under the mask");
+    }
+
+}
@@ -0,0 +1,27 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.opencv.core.Mat;
+
+// Looks for the bright spot in the inverted color channel for the
+// alliance.
+public class ColorChannelBrightSpotRecognizer extends BrightSpotRecognizer {
+
+    public ColorChannelBrightSpotRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                            SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        super(pAlliance, pTeamPropParameters, pSpikeWindowMapping, pWorkspace, "");
+    }
+
+    @Override
+    public boolean acceptsSingleChannel() {
+        return true;
+    }
+
+    @Override
+    protected Mat brightSpotSource(Mat pImageROI, String pOutputFilenamePreamble) {
+        return TeamPropRecognition.splitAndInvertChannels(pImageROI, alliance, allianceGrayParameters, pOutputFilenamePreamble, workspace);
+    }
+
+}
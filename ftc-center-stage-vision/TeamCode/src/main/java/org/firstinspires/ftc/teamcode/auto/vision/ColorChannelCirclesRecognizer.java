@@ -0,0 +1,274 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Looks for the Team Prop as the largest circle in the inverted color
+// channel for the alliance. With the SPIKE_WINDOWS circle search the
+// spike windows are searched one at a time instead of the whole ROI.
+public class ColorChannelCirclesRecognizer extends SpikeWindowRecognizer {
+
+    private static final String TAG = ColorChannelCirclesRecognizer.class.getSimpleName();
+
+    // The windowed search runs HoughCircles on each spike window after
+    // one pyrDown and then once more at full resolution around the best
+    // circle, within REFINE_RADIUS_SLACK of its radius.
+    private static final int COARSE_FACTOR = 2;
+    private static final int REFINE_RADIUS_SLACK = 2 * COARSE_FACTOR;
+
+    private final TeamPropParameters.ColorChannelCirclesParameters circlesParameters;
+    private final TeamPropParameters.HoughCirclesFunctionCallParameters houghParameters;
+    private final Size blurKernel = new Size(5, 5);
+    private final List<Rect> visibleWindows;
+
+    public ColorChannelCirclesRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                         SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        super(pAlliance, pSpikeWindowMapping, pWorkspace);
+        circlesParameters = Objects.requireNonNull(pTeamPropParameters.colorChannelCirclesParameters,
+                TAG + " No parameters for the color channel circles path");
+        houghParameters = circlesParameters.houghCirclesFunctionCallParameters;
+
+        // Largest window first.
+        visibleWindows = new ArrayList<>();
+        for (Map.Entry<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> entry : spikeWindows.entrySet())
+            if (entry.getKey() != RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS)
+                visibleWindows.add(entry.getValue().first);
+        Collections.sort(visibleWindows, new Comparator<Rect>() {
+            @Override
+            public int compare(Rect pFirst, Rect pSecond) {
+                return Double.compare(pSecond.area(), pFirst.area());
+            }
+        });
+    }
+
+    @Override
+    public boolean acceptsSingleChannel() {
+        return false;
+    }
+
+    @Override
+    public TeamPropReturn recognize(Mat pImageROI, String pOutputFilenamePreamble) {
+        Mat split = TeamPropRecognition.splitAndInvertChannels(pImageROI, alliance, circlesParameters.grayParameters, pOutputFilenamePreamble, workspace);
+
+        // Sharpening the image does not improve the results.
+        // Apply a 2d filter to sharpen the image.
+        //Mat sharp = sharpen(split, pOutputFilenamePreamble);
+
+        // Remove noise by Gaussian blurring.
+        Imgproc.GaussianBlur(split, split, blurKernel, 0);
+
+        if (circlesParameters.circleSearch == RobotConstantsCenterStage.CircleSearch.SPIKE_WINDOWS)
+            return recognizeInWindows(pImageROI, split, pOutputFilenamePreamble);
+
+        // Support both full and partial circles depending upon the ROI
+        // and the parameters in the XML file.
+        // See https://stackoverflow.com/questions/20698613/detect-semicircle-in-opencv
+        // dp = 1, minDist = 60, param1 = 200, param2 = 20, 0, 0);
+        // Perform HoughCircles recognition
+        Mat circles = workspace.circles;
+        Imgproc.HoughCircles(split, circles, Imgproc.HOUGH_GRADIENT,
+                houghParameters.dp, houghParameters.minDist,
+                houghParameters.param1, houghParameters.param2,
+                houghParameters.minRadius, houghParameters.maxRadius);
+
+        RobotLogCommon.d(TAG, "Number of circles " + circles.cols());
+
+        // If no circles were found then assume that the prop is outside
+        // of the ROI; use the NPOS position.
+        Mat propOut = colorImageForOutput(pImageROI, pOutputFilenamePreamble);
+        if (circles.cols() == 0)
+            return nposReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, "No circles found", propOut, pOutputFilenamePreamble);
+
+        int numberOfTeamPropsFound = 0;
+        int largestRadius = -1;
+        Point centerOfLargestCircle = null;
+        for (int x = 0; x < circles.cols(); x++) {
+            double[] c = circles.get(0, x);
+            Point center = new Point(Math.round(c[0]), Math.round(c[1]));
+            int radius = (int) Math.round(c[2]);
+
+            RobotLogCommon.d(TAG, "Found a circle with center at x " + center.x + ", y " + center.y + ", radius " + radius);
+
+            // Always draw a circle outline around the contour.
+            if (propOut != null)
+                Imgproc.circle(propOut, center, radius, new Scalar(255, 0, 255), 3, 8, 0);
+
+            // Apply the filters.
+            // Test for minimum radius, maximum radius.
+            if (radius < houghParameters.minRadius) {
+                // Circle is too small.
+                RobotLogCommon.d(TAG, "False positive: circle too small, radius: " + radius);
+                continue;
+            }
+
+            if (radius > houghParameters.maxRadius) {
+                // Circle is too large.
+                RobotLogCommon.d(TAG, "False positive: circle too large, radius: " + radius);
+                continue;
+            }
+
+            // Passed all filters. Found a circle that might be a team prop.
+            numberOfTeamPropsFound++;
+            RobotLogCommon.d(TAG, "Found a candidate for a team prop, radius " + radius);
+            if (radius > largestRadius) {
+                largestRadius = radius;
+                centerOfLargestCircle = center;
+            }
+        }
+
+        // We found at least one circle - but make sure that we've
+        // also passed all of the filters.
+        if (numberOfTeamPropsFound == 0)
+            return nposReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, "No circles passed the filters", propOut, pOutputFilenamePreamble);
+
+        Objects.requireNonNull(centerOfLargestCircle, TAG + " recognize: centerOfLargestCircle is null");
+        if (propOut != null) {
+            // Draw a black circle at the center of the largest circle.
+            Imgproc.circle(propOut, centerOfLargestCircle, 10, new Scalar(0, 0, 0), 4);
+            String teamPropFilename = pOutputFilenamePreamble + "_CIR.png";
+            RobotLogCommon.d(TAG, "Writing " + teamPropFilename);
+            ImageFileWriter.write(teamPropFilename, propOut);
+        }
+        RobotLogCommon.d(TAG, "Number of candidate team props found: " + numberOfTeamPropsFound);
+
+        if (numberOfTeamPropsFound > circlesParameters.maxCircles)
+            return nposReturn(RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL, "Number of circles (" + numberOfTeamPropsFound + ") " +
+                    "exceeds the maximum of " + circlesParameters.maxCircles, propOut, pOutputFilenamePreamble);
+
+        return lookThroughWindows(propOut, centerOfLargestCircle, pOutputFilenamePreamble);
+    }
+
+    // Searches the spike windows, largest first, and stops at the first
+    // one with a circle that passes the radius filters, as long as the
+    // window does not hold more than max_circles of them. Each window is
+    // searched at 1/COARSE_FACTOR scale and the largest circle found
+    // there is refined at full resolution.
+    private TeamPropReturn recognizeInWindows(Mat pImageROI, Mat pSplit, String pOutputFilenamePreamble) {
+        Mat propOut = colorImageForOutput(pImageROI, pOutputFilenamePreamble);
+        Rect roiBounds = new Rect(0, 0, pSplit.cols(), pSplit.rows());
+        for (Rect window : visibleWindows) {
+            Rect searchArea = intersect(window, roiBounds);
+            if (searchArea.width < COARSE_FACTOR || searchArea.height < COARSE_FACTOR)
+                continue;
+
+            Mat windowImage = pSplit.submat(searchArea);
+            try {
+                Imgproc.pyrDown(windowImage, workspace.coarseWindow);
+            } finally {
+                windowImage.release();
+            }
+
+            // Fewer pixels lie on a smaller circle so the accumulator
+            // threshold is scaled along with the distances.
+            Imgproc.HoughCircles(workspace.coarseWindow, workspace.circles, Imgproc.HOUGH_GRADIENT,
+                    houghParameters.dp, houghParameters.minDist / COARSE_FACTOR,
+                    houghParameters.param1, Math.max(1.0, houghParameters.param2 / COARSE_FACTOR),
+                    houghParameters.minRadius / COARSE_FACTOR, (houghParameters.maxRadius + COARSE_FACTOR - 1) / COARSE_FACTOR);
+
+            int candidates = 0;
+            Point coarseCenter = null;
+            int coarseRadius = -1;
+            for (int i = 0; i < workspace.circles.cols(); i++) {
+                double[] c = workspace.circles.get(0, i);
+                Point center = new Point(searchArea.x + Math.round(c[0] * COARSE_FACTOR), searchArea.y + Math.round(c[1] * COARSE_FACTOR));
+                int radius = (int) Math.round(c[2] * COARSE_FACTOR);
+                RobotLogCommon.d(TAG, "Found a circle in a spike window with center at x " + center.x + ", y " + center.y + ", radius " + radius);
+                if (propOut != null)
+                    Imgproc.circle(propOut, center, radius, new Scalar(255, 0, 255), 3, 8, 0);
+
+                if (radius < houghParameters.minRadius || radius > houghParameters.maxRadius)
+                    continue;
+
+                candidates++;
+                if (radius > coarseRadius) {
+                    coarseRadius = radius;
+                    coarseCenter = center;
+                }
+            }
+
+            if (candidates == 0)
+                continue;
+
+            if (candidates > circlesParameters.maxCircles) {
+                RobotLogCommon.d(TAG, "Number of circles (" + candidates + ") in spike window " + window +
+                        " exceeds the maximum of " + circlesParameters.maxCircles);
+                continue;
+            }
+
+            Point centerOfLargestCircle = refine(pSplit, roiBounds, coarseCenter, coarseRadius);
+            if (propOut != null) {
+                // Draw a black circle at the center of the largest circle.
+                Imgproc.circle(propOut, centerOfLargestCircle, 10, new Scalar(0, 0, 0), 4);
+                String teamPropFilename = pOutputFilenamePreamble + "_CIR.png";
+                RobotLogCommon.d(TAG, "Writing " + teamPropFilename);
+                ImageFileWriter.write(teamPropFilename, propOut);
+            }
+
+            return lookThroughWindows(propOut, centerOfLargestCircle, pOutputFilenamePreamble);
+        }
+
+        return nposReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, "No circles passed the filters in any spike window",
+                propOut, pOutputFilenamePreamble);
+    }
+
+    // Runs HoughCircles at full resolution on the area around a circle
+    // found at the coarse scale and returns the center of the strongest
+    // circle there, or the coarse center if there is none.
+    private Point refine(Mat pSplit, Rect pRoiBounds, Point pCoarseCenter, int pCoarseRadius) {
+        int half = pCoarseRadius + REFINE_RADIUS_SLACK + COARSE_FACTOR;
+        Rect refineArea = intersect(new Rect((int) pCoarseCenter.x - half, (int) pCoarseCenter.y - half, 2 * half, 2 * half), pRoiBounds);
+        if (refineArea.width <= 0 || refineArea.height <= 0)
+            return pCoarseCenter;
+
+        Mat refineImage = pSplit.submat(refineArea);
+        try {
+            Imgproc.HoughCircles(refineImage, workspace.circles, Imgproc.HOUGH_GRADIENT,
+                    houghParameters.dp, 2.0 * half, houghParameters.param1, houghParameters.param2,
+                    Math.max(houghParameters.minRadius, pCoarseRadius - REFINE_RADIUS_SLACK),
+                    Math.min(houghParameters.maxRadius, pCoarseRadius + REFINE_RADIUS_SLACK));
+        } finally {
+            refineImage.release();
+        }
+
+        // The circles are in order of their accumulator votes.
+        for (int i = 0; i < workspace.circles.cols(); i++) {
+            double[] c = workspace.circles.get(0, i);
+            int radius = (int) Math.round(c[2]);
+            if (radius < houghParameters.minRadius || radius > houghParameters.maxRadius)
+                continue;
+
+            Point center = new Point(refineArea.x + Math.round(c[0]), refineArea.y + Math.round(c[1]));
+            RobotLogCommon.d(TAG, "Refined the circle to center at x " + center.x + ", y " + center.y + ", radius " + radius);
+            return center;
+        }
+
+        RobotLogCommon.d(TAG, "No circle at full resolution; using the coarse center");
+        return pCoarseCenter;
+    }
+
+    private static Rect intersect(Rect pFirst, Rect pSecond) {
+        int x1 = Math.max(pFirst.x, pSecond.x);
+        int y1 = Math.max(pFirst.y, pSecond.y);
+        int x2 = Math.min(pFirst.x + pFirst.width, pSecond.x + pSecond.width);
+        int y2 = Math.min(pFirst.y + pFirst.height, pSecond.y + pSecond.height);
+        return new Rect(x1, y1, Math.max(0, x2 - x1), Math.max(0, y2 - y1));
+    }
+
+}
@@ -0,0 +1,42 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.xml.VisionParameters;
+import org.opencv.core.Mat;
+
+import java.util.Objects;
+
+// Counts the white pixels in each spike window after thresholding the
+// inverted color channel for the alliance.
+public class ColorChannelPixelCountRecognizer extends PixelCountRecognizer {
+
+    private static final String TAG = ColorChannelPixelCountRecognizer.class.getSimpleName();
+
+    private final VisionParameters.GrayParameters allianceGrayParameters;
+
+    public ColorChannelPixelCountRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                            SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        this(pAlliance, Objects.requireNonNull(pTeamPropParameters.colorChannelPixelCountParameters,
+                TAG + " No parameters for the color channel pixel count path"), pSpikeWindowMapping, pWorkspace);
+    }
+
+    private ColorChannelPixelCountRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters.ColorChannelPixelCountParameters pPixelCountParameters,
+                                             SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        super(pAlliance, forAlliance(pAlliance, pPixelCountParameters.redMinWhitePixelCount, pPixelCountParameters.blueMinWhitePixelCount),
+                pSpikeWindowMapping, pWorkspace);
+        allianceGrayParameters = forAlliance(pAlliance, pPixelCountParameters.redGrayParameters, pPixelCountParameters.blueGrayParameters);
+    }
+
+    @Override
+    public boolean acceptsSingleChannel() {
+        return true;
+    }
+
+    @Override
+    protected Mat threshold(Mat pImageROI, String pOutputFilenamePreamble) {
+        return TeamPropRecognition.invertAdjustAndThreshold(pImageROI, alliance, allianceGrayParameters, pOutputFilenamePreamble, workspace);
+    }
+
+}
@@ -0,0 +1,251 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.platform.android.TimeStamp;
+import org.firstinspires.ftc.ftcdevcommon.platform.android.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.robot.device.camera.FrameInfo;
+import org.firstinspires.ftc.teamcode.robot.device.camera.ImageProvider;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.opencv.core.Mat;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Runs several recognition paths concurrently over the same ROI and
+// combines their answers by weighted vote. Each path has its own
+// recognizer and RecognitionWorkspace so the paths share nothing but
+// the ROI, which they only read. The Control Hub has four cores; the
+// pool leaves one of them for the rest of the robot.
+// An instance may only be used by one thread at a time; call close()
+// when the OpMode is finished with it.
+public class EnsembleRecognition {
+    private static final String TAG = EnsembleRecognition.class.getSimpleName();
+
+    private final String workingDirectory;
+    private final SpikeWindowMapping spikeWindowMapping;
+    private final EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, Double> weights;
+    private final EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, TeamPropRecognizer> recognizers =
+            new EnumMap<>(RobotConstantsCenterStage.TeamPropRecognitionPath.class);
+    private final EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, RecognitionWorkspace> workspaces =
+            new EnumMap<>(RobotConstantsCenterStage.TeamPropRecognitionPath.class);
+    private final ExecutorService pathExecutor;
+    private final ProcessingScale processingScale;
+    private final Mat scaledROI = MatTracker.track(MatTracker.Stage.WORKSPACE, new Mat());
+
+    public EnsembleRecognition(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                               SpikeWindowMapping pSpikeWindowMapping) {
+        workingDirectory = WorkingDirectory.getWorkingDirectory() + RobotConstants.IMAGE_DIR;
+        spikeWindowMapping = pSpikeWindowMapping;
+        weights = Objects.requireNonNull(pSpikeWindowMapping.ensembleParameters,
+                TAG + " No ensemble parameters for recognition").weights;
+
+        // At a reduced scale the ROI is downscaled once for all of the
+        // paths.
+        processingScale = new ProcessingScale(pSpikeWindowMapping.processingScale);
+        TeamPropParameters scaledTeamPropParameters = processingScale.scaleTeamPropParameters(pTeamPropParameters);
+        SpikeWindowMapping scaledSpikeWindowMapping = processingScale.scaleSpikeWindowMapping(pSpikeWindowMapping);
+        for (RobotConstantsCenterStage.TeamPropRecognitionPath path : weights.keySet()) {
+            RecognitionWorkspace workspace = new RecognitionWorkspace(pSpikeWindowMapping.imageParameters, processingScale);
+            workspaces.put(path, workspace);
+            recognizers.put(path, TeamPropRecognizers.create(path, pAlliance, scaledTeamPropParameters, scaledSpikeWindowMapping, workspace));
+        }
+
+        int poolSize = Math.max(1, Math.min(weights.size(), Runtime.getRuntime().availableProcessors() - 1));
+        pathExecutor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        RobotLogCommon.d(TAG, "Ensemble of " + weights + " on " + poolSize + " threads");
+    }
+
+    // Whether all of the paths can work from the inverted color channel
+    // for the alliance alone.
+    public boolean acceptsSingleChannel() {
+        for (TeamPropRecognizer recognizer : recognizers.values())
+            if (!recognizer.acceptsSingleChannel())
+                return false;
+        return true;
+    }
+
+    // The same ensemble serves pre-start recognition, which should not
+    // fill the image directory, and recognition after START, which
+    // should.
+    public TeamPropReturn recognizeTeamProp(ImageProvider pImageProvider, boolean pWriteImageFiles) throws InterruptedException {
+        return recognizeTeamProp(pImageProvider, pWriteImageFiles, null);
+    }
+
+    // If pSceneChangeDetector is not null and the ROI has not changed
+    // since the last recognition recorded in it, that result is returned
+    // with the FrameInfo and latency of the current image and none of
+    // the paths run.
+    public TeamPropReturn recognizeTeamProp(ImageProvider pImageProvider, boolean pWriteImageFiles,
+                                            SceneChangeDetector pSceneChangeDetector) throws InterruptedException {
+        RobotLogCommon.d(TAG, "In EnsembleRecognition.recognizeTeamProp");
+
+        Pair<Mat, FrameInfo> teamPropImage = pImageProvider.getImage();
+        if (teamPropImage == null)
+            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR); // don't crash
+
+        FrameInfo frameInfo = teamPropImage.second;
+        Mat imageROI = null;
+        EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, Future<Pair<TeamPropReturn, Long>>> futures =
+                new EnumMap<>(RobotConstantsCenterStage.TeamPropRecognitionPath.class);
+        ImageFileWriter.ArtifactSession artifactSession = null;
+        boolean failed = true;
+        try {
+            String outputFilenamePreamble = null; // no image files, no drawing
+            if (pWriteImageFiles && spikeWindowMapping.artifactLevel != RobotConstantsCenterStage.ArtifactLevel.NONE) {
+                String fileDate = TimeStamp.getDateTimeStamp(frameInfo.timestamp);
+                outputFilenamePreamble = ImageUtils.createOutputFilePreamble(spikeWindowMapping.imageParameters.image_source, workingDirectory, fileDate);
+                artifactSession = ImageFileWriter.beginSession(spikeWindowMapping.artifactLevel);
+            }
+
+            imageROI = ImageUtils.preProcessImage(teamPropImage.first, outputFilenamePreamble, spikeWindowMapping.imageParameters);
+            if (pSceneChangeDetector != null && !pSceneChangeDetector.hasChanged(imageROI) &&
+                    pSceneChangeDetector.getLastReturn() != null) {
+                TeamPropReturn lastReturn = pSceneChangeDetector.getLastReturn();
+                failed = lastReturn.recognitionResults != RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
+                long nowNanos = System.nanoTime();
+                RobotLogCommon.d(TAG, "Scene unchanged; reusing " + lastReturn.recognitionResults + " " + lastReturn.teamPropLocation);
+                return new TeamPropReturn(lastReturn, frameInfo,
+                        new RecognitionLatency(frameInfo.captureTimeNanos, frameInfo.handoffTimeNanos, nowNanos, nowNanos));
+            }
+
+            Mat recognitionROI = processingScale.downscale(imageROI, scaledROI);
+            long preprocessedTimeNanos = System.nanoTime();
+
+            for (Map.Entry<RobotConstantsCenterStage.TeamPropRecognitionPath, TeamPropRecognizer> entry : recognizers.entrySet()) {
+                if (recognitionROI.channels() == 1 && !entry.getValue().acceptsSingleChannel())
+                    throw new AutonomousRobotException(TAG, "Recognition path " + entry.getKey() + " requires a BGR image");
+
+                // Keep the output files of the paths apart.
+                String pathPreamble = outputFilenamePreamble == null ? null :
+                        outputFilenamePreamble + "_" + entry.getKey().toString().toLowerCase(Locale.US);
+                futures.put(entry.getKey(), pathExecutor.submit(new PathRecognition(entry.getValue(), recognitionROI, pathPreamble, artifactSession)));
+            }
+
+            // Tally the weighted votes of the paths that succeeded.
+            EnumMap<RobotConstantsCenterStage.TeamPropLocation, Double> votes =
+                    new EnumMap<>(RobotConstantsCenterStage.TeamPropLocation.class);
+            for (Map.Entry<RobotConstantsCenterStage.TeamPropRecognitionPath, Future<Pair<TeamPropReturn, Long>>> entry : futures.entrySet()) {
+                Pair<TeamPropReturn, Long> pathResult;
+                try {
+                    pathResult = entry.getValue().get();
+                } catch (ExecutionException eex) {
+                    RobotLogCommon.d(TAG, "Path " + entry.getKey() + " failed: " + eex.getCause());
+                    continue;
+                }
+
+                TeamPropReturn pathReturn = pathResult.first;
+                RobotLogCommon.d(TAG, String.format(Locale.US, "Path %s: %s %s in %.1f ms", entry.getKey(),
+                        pathReturn.recognitionResults, pathReturn.teamPropLocation, pathResult.second / 1_000_000.0));
+                if (pathReturn.recognitionResults == RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL)
+                    votes.merge(pathReturn.teamPropLocation, weights.get(entry.getKey()), Double::sum);
+            }
+
+            RecognitionLatency latency = new RecognitionLatency(frameInfo.captureTimeNanos, frameInfo.handoffTimeNanos,
+                    preprocessedTimeNanos, System.nanoTime());
+            RobotLogCommon.d(TAG, "Latency for " + frameInfo + ": " + latency);
+
+            if (votes.isEmpty()) {
+                RobotLogCommon.d(TAG, "No path in the ensemble succeeded");
+                TeamPropReturn unsuccessful = new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL);
+                if (pSceneChangeDetector != null)
+                    pSceneChangeDetector.setLastReturn(unsuccessful);
+                return unsuccessful;
+            }
+
+            // On a tie the location that comes first in TeamPropLocation wins.
+            RobotConstantsCenterStage.TeamPropLocation winner = null;
+            for (Map.Entry<RobotConstantsCenterStage.TeamPropLocation, Double> vote : votes.entrySet()) {
+                if (winner == null || vote.getValue() > votes.get(winner))
+                    winner = vote.getKey();
+            }
+
+            failed = false;
+            RobotLogCommon.d(TAG, "Weighted votes " + votes + "; going with " + winner);
+            TeamPropReturn ensembleReturn = new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, winner);
+            if (pSceneChangeDetector != null)
+                pSceneChangeDetector.setLastReturn(ensembleReturn);
+            return new TeamPropReturn(ensembleReturn, frameInfo, latency);
+        } finally {
+            // The paths may not be interrupted in the middle of native
+            // code; wait for all of them before the ROI and the frame go
+            // away.
+            boolean interrupted = false;
+            for (Future<Pair<TeamPropReturn, Long>> future : futures.values()) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException iex) {
+                        interrupted = true;
+                    } catch (ExecutionException eex) {
+                        break;
+                    }
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+
+            if (artifactSession != null)
+                ImageFileWriter.endSession(artifactSession, failed);
+
+            // The ROI is only a header on the image, not a copy.
+            if (imageROI != null && imageROI != teamPropImage.first)
+                MatTracker.release(imageROI);
+            pImageProvider.releaseImage();
+        }
+    }
+
+    public void close() {
+        pathExecutor.shutdownNow();
+        for (RecognitionWorkspace workspace : workspaces.values())
+            workspace.release();
+        MatTracker.release(scaledROI);
+    }
+
+    // Runs one path and measures its wall time in nanoseconds.
+    private static class PathRecognition implements Callable<Pair<TeamPropReturn, Long>> {
+        private final TeamPropRecognizer recognizer;
+        private final Mat imageROI;
+        private final String outputFilenamePreamble;
+        private final ImageFileWriter.ArtifactSession artifactSession; // may be null
+
+        private PathRecognition(TeamPropRecognizer pRecognizer, Mat pImageROI, String pOutputFilenamePreamble,
+                                ImageFileWriter.ArtifactSession pArtifactSession) {
+            recognizer = pRecognizer;
+            imageROI = pImageROI;
+            outputFilenamePreamble = pOutputFilenamePreamble;
+            artifactSession = pArtifactSession;
+        }
+
+        @Override
+        public Pair<TeamPropReturn, Long> call() {
+            long startNanos = System.nanoTime();
+            if (artifactSession != null)
+                ImageFileWriter.bindSession(artifactSession);
+            try {
+                TeamPropReturn pathReturn = recognizer.recognize(imageROI, outputFilenamePreamble);
+                return Pair.create(pathReturn, System.nanoTime() - startNanos);
+            } finally {
+                ImageFileWriter.unbindSession();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,310 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// An append-only file of raw 8-bit images, e.g. the intermediate
+// images of every recognition in one run of an OpMode. Appending an
+// image is a copy into a memory-mapped region of the file, which is
+// far cheaper than encoding a PNG. FrameJournalExtractor turns a
+// journal back into PNG files.
+//
+// Layout, all big-endian:
+//   header:  FILE_MAGIC (8 bytes), version (int)
+//   records: RECORD_MAGIC (int), timestamp ms (long), name length
+//            (short), name (UTF-8), rows, cols, type, data length (ints),
+//            data
+//   index:   record count (int), then for each record the same fields
+//            as its header except for the magic, plus the offset of
+//            its data (long)
+//   footer:  offset of the index (long), FOOTER_MAGIC (int)
+// The index and footer are written by close(). A journal that was not
+// closed, e.g. because the Robot Controller lost power, can still be
+// read by scanning the records.
+public class FrameJournal implements AutoCloseable {
+    private static final String TAG = FrameJournal.class.getSimpleName();
+
+    private static final byte[] FILE_MAGIC = "FTCJRNL1".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_MAGIC = 0x4A524543; // "JREC"
+    private static final int FOOTER_MAGIC = 0x4A454E44; // "JEND"
+    private static final int FOOTER_SIZE = 12;
+    private static final int RECORD_FIXED_SIZE = 4 + 8 + 2 + 4 * 4;
+
+    public static final int DEFAULT_REGION_BYTES = 16 * 1024 * 1024;
+
+    // One image in the journal.
+    public static class Entry {
+        public final String name;
+        public final long timestampMs;
+        public final int rows;
+        public final int cols;
+        public final int type;
+        public final long dataOffset;
+        public final int dataLength;
+
+        private Entry(String pName, long pTimestampMs, int pRows, int pCols, int pType, long pDataOffset, int pDataLength) {
+            name = pName;
+            timestampMs = pTimestampMs;
+            rows = pRows;
+            cols = pCols;
+            type = pType;
+            dataOffset = pDataOffset;
+            dataLength = pDataLength;
+        }
+    }
+
+    private final String journalPath;
+    private final RandomAccessFile journalFile;
+    private final FileChannel channel;
+    private final int regionBytes;
+    private final List<Entry> entries = new ArrayList<>();
+
+    // All of the fields below are guarded by this.
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long position;
+    private byte[] imageBytes = new byte[0];
+    private boolean closed;
+
+    public FrameJournal(String pJournalPath) throws IOException {
+        this(pJournalPath, DEFAULT_REGION_BYTES);
+    }
+
+    // The file is mapped pRegionBytes at a time.
+    public FrameJournal(String pJournalPath, int pRegionBytes) throws IOException {
+        journalPath = pJournalPath;
+        regionBytes = pRegionBytes;
+        journalFile = new RandomAccessFile(pJournalPath, "rw");
+        journalFile.setLength(0);
+        channel = journalFile.getChannel();
+
+        ensureCapacity(HEADER_SIZE);
+        region.put(FILE_MAGIC);
+        region.putInt(VERSION);
+        position = HEADER_SIZE;
+        RobotLogCommon.d(TAG, "Opened frame journal " + pJournalPath);
+    }
+
+    // Copies pImage, which must have 8-bit elements, into the journal.
+    // Returns false if the image could not be written.
+    public synchronized boolean append(String pName, Mat pImage) {
+        if (closed)
+            return false;
+
+        if (CvType.depth(pImage.type()) != CvType.CV_8U) {
+            RobotLogCommon.d(TAG, "Not journaling " + pName + ": only 8-bit images are supported");
+            return false;
+        }
+
+        byte[] nameBytes = pName.getBytes(StandardCharsets.UTF_8);
+        int dataLength = (int) (pImage.total() * pImage.elemSize());
+        if (imageBytes.length < dataLength)
+            imageBytes = new byte[dataLength];
+        pImage.get(0, 0, imageBytes); // also handles an ROI that is not continuous
+
+        long timestampMs = System.currentTimeMillis();
+        try {
+            ensureCapacity(RECORD_FIXED_SIZE + nameBytes.length + dataLength);
+        } catch (IOException iox) {
+            RobotLogCommon.d(TAG, "Unable to extend the frame journal: " + iox);
+            return false;
+        }
+
+        region.putInt(RECORD_MAGIC);
+        region.putLong(timestampMs);
+        region.putShort((short) nameBytes.length);
+        region.put(nameBytes);
+        region.putInt(pImage.rows());
+        region.putInt(pImage.cols());
+        region.putInt(pImage.type());
+        region.putInt(dataLength);
+        long dataOffset = regionStart + region.position();
+        region.put(imageBytes, 0, dataLength);
+        position = regionStart + region.position();
+
+        entries.add(new Entry(pName, timestampMs, pImage.rows(), pImage.cols(), pImage.type(), dataOffset, dataLength));
+        return true;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    // Writes the index and the footer and trims the file to its
+    // contents.
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        try {
+            long indexOffset = position;
+            int indexSize = 4;
+            for (Entry entry : entries)
+                indexSize += 8 + 2 + entry.name.getBytes(StandardCharsets.UTF_8).length + 4 * 4 + 8;
+
+            ensureCapacity(indexSize + FOOTER_SIZE);
+            region.putInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] nameBytes = entry.name.getBytes(StandardCharsets.UTF_8);
+                region.putLong(entry.timestampMs);
+                region.putShort((short) nameBytes.length);
+                region.put(nameBytes);
+                region.putInt(entry.rows);
+                region.putInt(entry.cols);
+                region.putInt(entry.type);
+                region.putInt(entry.dataLength);
+                region.putLong(entry.dataOffset);
+            }
+
+            region.putLong(indexOffset);
+            region.putInt(FOOTER_MAGIC);
+            position = regionStart + region.position();
+            region.force();
+            channel.truncate(position);
+        } finally {
+            region = null;
+            journalFile.close();
+        }
+
+        RobotLogCommon.d(TAG, "Closed frame journal " + journalPath + " with " + entries.size() + " images, " + position + " bytes");
+    }
+
+    // Maps a new region at the current position if the current region
+    // cannot hold pBytes more.
+    private void ensureCapacity(int pBytes) throws IOException {
+        if (region != null && position + pBytes <= regionStart + region.capacity())
+            return;
+
+        if (region != null)
+            region.force();
+
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(regionBytes, pBytes));
+    }
+
+    // Reads a journal, from its index if it was closed and otherwise by
+    // scanning its records. The Reader does not log so that it can run
+    // on a desktop, e.g. in FrameJournalExtractor, without the FTC SDK.
+    public static class Reader implements AutoCloseable {
+        private final RandomAccessFile journalFile;
+        private final ByteBuffer contents;
+        private final boolean indexed;
+        private final List<Entry> entries;
+
+        public Reader(String pJournalPath) throws IOException {
+            journalFile = new RandomAccessFile(pJournalPath, "r");
+            FileChannel channel = journalFile.getChannel();
+            contents = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            byte[] magic = new byte[FILE_MAGIC.length];
+            if (contents.limit() >= HEADER_SIZE)
+                contents.get(magic);
+            if (!Arrays.equals(magic, FILE_MAGIC))
+                throw new AutonomousRobotException(TAG, pJournalPath + " is not a frame journal");
+            int version = contents.getInt();
+            if (version != VERSION)
+                throw new AutonomousRobotException(TAG, "Unsupported frame journal version " + version);
+
+            List<Entry> indexEntries = readIndex();
+            indexed = indexEntries != null;
+            entries = Collections.unmodifiableList(indexed ? indexEntries : scanRecords());
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        // False if the journal was not closed and its records were
+        // scanned instead.
+        public boolean isIndexed() {
+            return indexed;
+        }
+
+        // Returns a new Mat; the caller must release it.
+        public Mat readImage(Entry pEntry) {
+            byte[] data = new byte[pEntry.dataLength];
+            ByteBuffer view = contents.duplicate();
+            view.position((int) pEntry.dataOffset);
+            view.get(data);
+
+            Mat image = new Mat(pEntry.rows, pEntry.cols, pEntry.type);
+            image.put(0, 0, data);
+            return image;
+        }
+
+        @Override
+        public void close() throws IOException {
+            journalFile.close();
+        }
+
+        private List<Entry> readIndex() {
+            int limit = contents.limit();
+            if (limit < HEADER_SIZE + FOOTER_SIZE || contents.getInt(limit - 4) != FOOTER_MAGIC)
+                return null;
+
+            ByteBuffer view = contents.duplicate();
+            view.position((int) contents.getLong(limit - FOOTER_SIZE));
+            int count = view.getInt();
+            List<Entry> indexed = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long timestampMs = view.getLong();
+                String name = readName(view);
+                int rows = view.getInt();
+                int cols = view.getInt();
+                int type = view.getInt();
+                int dataLength = view.getInt();
+                indexed.add(new Entry(name, timestampMs, rows, cols, type, view.getLong(), dataLength));
+            }
+            return indexed;
+        }
+
+        // Stops at the first incomplete record.
+        private List<Entry> scanRecords() {
+            List<Entry> scanned = new ArrayList<>();
+            ByteBuffer view = contents.duplicate();
+            view.position(HEADER_SIZE);
+            while (view.remaining() >= RECORD_FIXED_SIZE && view.getInt(view.position()) == RECORD_MAGIC) {
+                view.getInt();
+                long timestampMs = view.getLong();
+                int nameLength = view.getShort(view.position());
+                if (view.remaining() < 2 + nameLength + 4 * 4)
+                    break;
+                String name = readName(view);
+                int rows = view.getInt();
+                int cols = view.getInt();
+                int type = view.getInt();
+                int dataLength = view.getInt();
+                if (dataLength < 0 || view.remaining() < dataLength)
+                    break;
+
+                scanned.add(new Entry(name, timestampMs, rows, cols, type, view.position(), dataLength));
+                view.position(view.position() + dataLength);
+            }
+            return scanned;
+        }
+
+        private static String readName(ByteBuffer pView) {
+            byte[] nameBytes = new byte[pView.getShort()];
+            pView.get(nameBytes);
+            return new String(nameBytes, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+// Desktop tool that lists the images in a FrameJournal or writes them
+// out as PNG files under their original names.
+// Usage: FrameJournalExtractor <journal> [<output directory> [<name filter>]]
+// Without an output directory the index is listed. The optional filter
+// selects the images whose names contain it, e.g. _IMG or _THR.
+public class FrameJournalExtractor {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: FrameJournalExtractor <journal> [<output directory> [<name filter>]]");
+            return;
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+
+        SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        try (FrameJournal.Reader reader = new FrameJournal.Reader(args[0])) {
+            if (!reader.isIndexed())
+                System.out.println("The journal has no index; its records were scanned");
+
+            if (args.length == 1) {
+                for (FrameJournal.Entry entry : reader.getEntries())
+                    System.out.println(timeFormat.format(new Date(entry.timestampMs)) + " " + entry.name +
+                            " " + entry.cols + "x" + entry.rows + " type " + entry.type);
+                return;
+            }
+
+            File outputDirectory = new File(args[1]);
+            if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+                throw new IOException("Unable to create " + outputDirectory);
+
+            String nameFilter = args.length > 2 ? args[2] : "";
+            int extracted = 0;
+            for (FrameJournal.Entry entry : reader.getEntries()) {
+                if (!entry.name.contains(nameFilter))
+                    continue;
+
+                Mat image = reader.readImage(entry);
+                try {
+                    Imgcodecs.imwrite(new File(outputDirectory, entry.name).getPath(), image);
+                    extracted++;
+                } finally {
+                    image.release();
+                }
+            }
+
+            System.out.println("Extracted " + extracted + " of " + reader.getEntries().size() + " images");
+        }
+    }
+
+}
@@ -0,0 +1,320 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Replays previously captured images in the order in which they were
+// captured. A background thread decodes the images ahead of the
+// consumer into a bounded queue. There are no dependencies on Android
+// or the FTC SDK so that a replay can also run on a desktop; messages
+// go to a ReplayLog instead of the robot log. ReplayImageProvider
+// wraps a FrameReplay for the recognition code on the robot.
+// An instance may only be consumed by one thread at a time.
+public class FrameReplay implements AutoCloseable {
+    private static final String TAG = FrameReplay.class.getSimpleName();
+
+    // REAL_TIME delivers the images with the same spacing as they were
+    // captured; MAXIMUM delivers them as fast as the consumer asks.
+    public enum ReplaySpeed {REAL_TIME, MAXIMUM}
+
+    // A sequence of images to replay.
+    public interface FrameSource {
+        int getFrameCount();
+
+        // Returns the image in BGR order or an empty Mat if the image
+        // cannot be read.
+        Mat decodeFrame(int pIndex);
+
+        // The time at which the image was captured.
+        Date getFrameTimestamp(int pIndex);
+    }
+
+    // Receives the messages of a replay. May be called from the
+    // prefetch thread.
+    public interface ReplayLog {
+        void log(String pMessage);
+    }
+
+    public static final ReplayLog NO_LOG = pMessage -> {};
+
+    // One replayed image.
+    public static class ReplayedFrame {
+        public final Mat image;
+        public final Date timestamp; // the time of the original capture
+        public final long captureTimeNanos; // System.nanoTime() timebase
+        public final long sequenceNumber; // starts at 1
+
+        private ReplayedFrame(Mat pImage, Date pTimestamp, long pCaptureTimeNanos, long pSequenceNumber) {
+            image = pImage;
+            timestamp = pTimestamp;
+            captureTimeNanos = pCaptureTimeNanos;
+            sequenceNumber = pSequenceNumber;
+        }
+    }
+
+    private static final int FRAME_TIMEOUT_MS = 1000;
+
+    private final FrameSource frameSource;
+    private final ReplaySpeed replaySpeed;
+    private final ReplayLog replayLog;
+    private final LinkedBlockingQueue<DecodedFrame> decodedFrames;
+    private final ExecutorService prefetchExecutor;
+    private final Future<?> prefetchFuture;
+    private volatile boolean stopRequested;
+
+    // Only accessed from the consumer's thread.
+    private Mat currentImage;
+    private boolean endOfReplay;
+    private long firstFrameTimeMs;
+    private long replayStartNanos;
+    private long sequenceNumber;
+
+    // Replays all of the _IMG.png files in a directory in the order of
+    // their timestamps.
+    public FrameReplay(String pImageDirectory, ReplaySpeed pReplaySpeed, int pCacheCapacity, ReplayLog pReplayLog) {
+        this(new DirectorySource(pImageDirectory, pReplayLog), pReplaySpeed, pCacheCapacity, pReplayLog);
+    }
+
+    public FrameReplay(FrameSource pFrameSource, ReplaySpeed pReplaySpeed, int pCacheCapacity, ReplayLog pReplayLog) {
+        if (pCacheCapacity < 1)
+            throw new AutonomousRobotException(TAG, "The frame cache must hold at least 1 frame");
+
+        frameSource = pFrameSource;
+        replaySpeed = pReplaySpeed;
+        replayLog = pReplayLog;
+        decodedFrames = new LinkedBlockingQueue<>(pCacheCapacity);
+        replayLog.log("Replaying " + frameSource.getFrameCount() + " images at " + replaySpeed + " speed");
+
+        prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, TAG);
+            thread.setDaemon(true);
+            return thread;
+        });
+        prefetchFuture = prefetchExecutor.submit(this::prefetch);
+    }
+
+    // Returns null at the end of the replay. The image belongs to this
+    // replay until releaseFrame() or the next call to nextFrame().
+    public ReplayedFrame nextFrame() throws InterruptedException {
+        releaseFrame(); // in case the caller did not
+        if (endOfReplay)
+            return null;
+
+        DecodedFrame decodedFrame = decodedFrames.poll(FRAME_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (decodedFrame == null) {
+            replayLog.log("Timed out waiting for a decoded image");
+            return null;
+        }
+
+        if (decodedFrame.image == null) { // end of the replay
+            endOfReplay = true;
+            replayLog.log("End of replay after " + sequenceNumber + " images");
+            return null;
+        }
+
+        // Hold back each image until the same time has elapsed since the
+        // first image as elapsed between their captures.
+        long captureTimeNanos = System.nanoTime();
+        if (replaySpeed == ReplaySpeed.REAL_TIME) {
+            if (sequenceNumber == 0) {
+                firstFrameTimeMs = decodedFrame.timestamp.getTime();
+                replayStartNanos = captureTimeNanos;
+            } else {
+                captureTimeNanos = replayStartNanos + TimeUnit.MILLISECONDS.toNanos(decodedFrame.timestamp.getTime() - firstFrameTimeMs);
+                long waitNanos = captureTimeNanos - System.nanoTime();
+                if (waitNanos > 0)
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        currentImage = decodedFrame.image;
+        return new ReplayedFrame(currentImage, decodedFrame.timestamp, captureTimeNanos, ++sequenceNumber);
+    }
+
+    public void releaseFrame() {
+        if (currentImage != null) {
+            currentImage.release();
+            currentImage = null;
+        }
+    }
+
+    // Stop the prefetch thread and release all images that have not
+    // been consumed.
+    @Override
+    public void close() {
+        releaseFrame();
+        stopRequested = true;
+        prefetchExecutor.shutdown();
+        try {
+            if (!prefetchExecutor.awaitTermination(FRAME_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                replayLog.log("Timed out waiting for the prefetch thread");
+            else if (!prefetchFuture.isCancelled())
+                prefetchFuture.get();
+        } catch (InterruptedException iex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            replayLog.log("Exception on completion of the prefetch thread " + ex);
+        }
+
+        DecodedFrame decodedFrame;
+        while ((decodedFrame = decodedFrames.poll()) != null) {
+            if (decodedFrame.image != null)
+                decodedFrame.image.release();
+        }
+    }
+
+    private Void prefetch() throws InterruptedException {
+        int frameCount = frameSource.getFrameCount();
+        for (int i = 0; i < frameCount && !stopRequested; i++) {
+            Mat image = frameSource.decodeFrame(i);
+            if (image.empty()) {
+                replayLog.log("Skipping unreadable image " + i);
+                continue;
+            }
+
+            if (!enqueue(new DecodedFrame(image, frameSource.getFrameTimestamp(i)))) {
+                image.release();
+                return null;
+            }
+        }
+
+        enqueue(new DecodedFrame(null, null));
+        return null;
+    }
+
+    // Block while the cache is full but keep checking for a stop
+    // request. Returns false if the replay has been closed.
+    private boolean enqueue(DecodedFrame pDecodedFrame) throws InterruptedException {
+        while (!stopRequested) {
+            if (decodedFrames.offer(pDecodedFrame, 50, TimeUnit.MILLISECONDS))
+                return true;
+        }
+        return false;
+    }
+
+    // An image is null only in the marker for the end of the replay.
+    private static class DecodedFrame {
+        private final Mat image;
+        private final Date timestamp;
+
+        private DecodedFrame(Mat pImage, Date pTimestamp) {
+            image = pImage;
+            timestamp = pTimestamp;
+        }
+    }
+
+    // Replays the original images, i.e. the _IMG entries, in a
+    // FrameJournal. The journal must have been written from images in
+    // BGR order.
+    public static class JournalSource implements FrameSource, AutoCloseable {
+        private final FrameJournal.Reader reader;
+        private final List<FrameJournal.Entry> imageEntries = new ArrayList<>();
+
+        public JournalSource(String pJournalPath, ReplayLog pReplayLog) throws IOException {
+            reader = new FrameJournal.Reader(pJournalPath);
+            if (!reader.isIndexed())
+                pReplayLog.log("Frame journal " + pJournalPath + " has no index; its records were scanned");
+            for (FrameJournal.Entry entry : reader.getEntries()) {
+                if (entry.name.endsWith("_IMG.png"))
+                    imageEntries.add(entry);
+            }
+        }
+
+        @Override
+        public int getFrameCount() {
+            return imageEntries.size();
+        }
+
+        @Override
+        public Mat decodeFrame(int pIndex) {
+            return reader.readImage(imageEntries.get(pIndex));
+        }
+
+        @Override
+        public Date getFrameTimestamp(int pIndex) {
+            return new Date(imageEntries.get(pIndex).timestampMs);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    // The images written by ImageUtils.preProcessImage are named
+    // <image source>_<MMddHHmm_ssSSS>_IMG.png, the format of
+    // TimeStamp.dateFormat, which is not used here because it is part
+    // of the Android platform code.
+    public static class DirectorySource implements FrameSource {
+        private static final Pattern IMAGE_FILENAME = Pattern.compile("_(\\d{8}_\\d{5})_IMG\\.png$");
+
+        private final File[] imageFiles;
+        private final Date[] timestamps;
+
+        public DirectorySource(String pImageDirectory, ReplayLog pReplayLog) {
+            File[] files = new File(pImageDirectory).listFiles((dir, name) -> name.endsWith("_IMG.png"));
+            if (files == null)
+                throw new AutonomousRobotException(TAG, "Unable to list the directory " + pImageDirectory);
+
+            // Use the timestamp in the filename if there is one; otherwise
+            // fall back to the time the file was last modified.
+            SimpleDateFormat filenameDateFormat = new SimpleDateFormat("MMddHHmm'_'ssSSS", Locale.US);
+            Date[] fileDates = new Date[files.length];
+            Integer[] order = new Integer[files.length];
+            for (int i = 0; i < files.length; i++) {
+                order[i] = i;
+                fileDates[i] = new Date(files[i].lastModified());
+                Matcher matcher = IMAGE_FILENAME.matcher(files[i].getName());
+                if (matcher.find()) {
+                    try {
+                        fileDates[i] = filenameDateFormat.parse(matcher.group(1));
+                    } catch (ParseException pex) {
+                        pReplayLog.log("Unable to parse the timestamp of " + files[i].getName());
+                    }
+                }
+            }
+
+            Arrays.sort(order, (a, b) -> fileDates[a].compareTo(fileDates[b]));
+            imageFiles = new File[files.length];
+            timestamps = new Date[files.length];
+            for (int i = 0; i < order.length; i++) {
+                imageFiles[i] = files[order[i]];
+                timestamps[i] = fileDates[order[i]];
+            }
+        }
+
+        @Override
+        public int getFrameCount() {
+            return imageFiles.length;
+        }
+
+        @Override
+        public Mat decodeFrame(int pIndex) {
+            return Imgcodecs.imread(imageFiles[pIndex].getPath(), Imgcodecs.IMREAD_COLOR);
+        }
+
+        @Override
+        public Date getFrameTimestamp(int pIndex) {
+            return timestamps[pIndex];
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+// Looks for the bright spot in the inverted grayscale image.
+public class GrayscaleBrightSpotRecognizer extends BrightSpotRecognizer {
+
+    private static final String TAG = GrayscaleBrightSpotRecognizer.class.getSimpleName();
+
+    public GrayscaleBrightSpotRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                         SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        super(pAlliance, pTeamPropParameters, pSpikeWindowMapping, pWorkspace, "_GRAY");
+    }
+
+    @Override
+    public boolean acceptsSingleChannel() {
+        return false;
+    }
+
+    @Override
+    protected Mat brightSpotSource(Mat pImageROI, String pOutputFilenamePreamble) {
+        Mat gray = workspace.gray;
+        Imgproc.cvtColor(pImageROI, gray, Imgproc.COLOR_BGR2GRAY);
+
+        if (pOutputFilenamePreamble != null) {
+            String grayFilename = pOutputFilenamePreamble + "_GRAY.png";
+            RobotLogCommon.d(TAG, "Writing " + grayFilename);
+            ImageFileWriter.write(grayFilename, gray);
+        }
+
+        Core.bitwise_not(gray, gray); // invert for better contrast
+
+        if (pOutputFilenamePreamble != null) {
+            String grayInvertedFilename = pOutputFilenamePreamble + "_GRAY_INVERTED.png";
+            RobotLogCommon.d(TAG, "Writing " + grayInvertedFilename);
+            ImageFileWriter.write(grayInvertedFilename, gray);
+        }
+
+        // Sharpening the image does not improve the results.
+        //Mat graySharp = sharpen(gray, pOutputFilenamePreamble + "_GRAY");
+
+        return gray;
+    }
+
+}
@@ -0,0 +1,57 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.xml.VisionParameters;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Objects;
+
+// Same as COLOR_CHANNEL_PIXEL_COUNT but starts from the grayscale
+// image, e.g. one from a monochrome camera such as the ArduCam OV9281,
+// whose frames arrive with the same value in all three channels.
+public class GrayscalePixelCountRecognizer extends PixelCountRecognizer {
+
+    private static final String TAG = GrayscalePixelCountRecognizer.class.getSimpleName();
+
+    private final VisionParameters.GrayParameters allianceGrayParameters;
+
+    public GrayscalePixelCountRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                         SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        this(pAlliance, Objects.requireNonNull(pTeamPropParameters.grayscalePixelCountParameters,
+                TAG + " No <grayscale_pixel_count> parameters in TeamPropParameters.xml"), pSpikeWindowMapping, pWorkspace);
+    }
+
+    private GrayscalePixelCountRecognizer(RobotConstants.Alliance pAlliance, TeamPropParameters.GrayscalePixelCountParameters pPixelCountParameters,
+                                          SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        super(pAlliance, forAlliance(pAlliance, pPixelCountParameters.redMinWhitePixelCount, pPixelCountParameters.blueMinWhitePixelCount),
+                pSpikeWindowMapping, pWorkspace);
+        allianceGrayParameters = forAlliance(pAlliance, pPixelCountParameters.redGrayParameters, pPixelCountParameters.blueGrayParameters);
+    }
+
+    // A single-channel ROI from the image source is an inverted color
+    // channel, not grayscale.
+    @Override
+    public boolean acceptsSingleChannel() {
+        return false;
+    }
+
+    @Override
+    protected Mat threshold(Mat pImageROI, String pOutputFilenamePreamble) {
+        Mat gray = workspace.gray;
+        Imgproc.cvtColor(pImageROI, gray, Imgproc.COLOR_BGR2GRAY);
+
+        if (pOutputFilenamePreamble != null) {
+            String grayFilename = pOutputFilenamePreamble + "_GRAY.png";
+            RobotLogCommon.d(TAG, "Writing " + grayFilename);
+            ImageFileWriter.write(grayFilename, gray);
+        }
+
+        int medianGray = ImageUtils.getChannelStatistics().compute(gray).getMedian();
+        return TeamPropRecognition.adjustAndThreshold(gray, false, medianGray, allianceGrayParameters, workspace);
+    }
+
+}
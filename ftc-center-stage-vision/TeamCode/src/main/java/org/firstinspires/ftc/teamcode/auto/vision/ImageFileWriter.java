@@ -0,0 +1,303 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Writes the image files that document recognition. Encoding a PNG and
+// writing it to flash takes far longer than the recognition step that
+// produced the image so, once start() has been called, write() only
+// copies the image into a bounded queue and a small pool of encoder
+// threads writes the files later. Before start() and after stop()
+// write() encodes synchronously, which is what the desktop tools and
+// the viewer OpModes want.
+// If a FrameJournal has been attached, the images are appended to it
+// raw instead of being written as PNG files, by the encoder threads if
+// they are running so that mapping a new region of the journal does not
+// hold up recognition.
+// A recognition may also open an ArtifactSession, which decides by its
+// ArtifactLevel which of the images written on its behalf reach the
+// writer at all.
+public class ImageFileWriter {
+    private static final String TAG = ImageFileWriter.class.getSimpleName();
+
+    // What write() does when the queue is full.
+    public enum OverflowPolicy {
+        DROP_NEWEST, // discard the image being written
+        DROP_OLDEST, // discard the oldest image in the queue
+        BLOCK // wait for room in the queue
+    }
+
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private static volatile AsyncWriter asyncWriter; // null when writing synchronously
+    private static volatile FrameJournal frameJournal; // null when writing PNG files
+
+    // The session, if any, of the recognition running on each thread.
+    private static final ThreadLocal<ArtifactSession> threadSession = new ThreadLocal<>();
+
+    // The image files of one recognition. At FAILURES_ONLY copies of the
+    // images are held until the outcome of the recognition is known.
+    public static class ArtifactSession {
+        private final RobotConstantsCenterStage.ArtifactLevel artifactLevel;
+        private final List<PendingImage> deferred = new ArrayList<>(); // guarded by itself
+
+        private ArtifactSession(RobotConstantsCenterStage.ArtifactLevel pArtifactLevel) {
+            artifactLevel = pArtifactLevel;
+        }
+    }
+
+    private static class PendingImage {
+        private final String filename;
+        private final Mat image;
+
+        private PendingImage(String pFilename, Mat pImage) {
+            filename = pFilename;
+            image = pImage;
+        }
+    }
+
+    private static class AsyncWriter {
+        private final BlockingQueue<PendingImage> queue;
+        private final OverflowPolicy overflowPolicy;
+        private final ExecutorService encoders;
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private volatile boolean stopping;
+
+        private AsyncWriter(int pQueueCapacity, int pEncoderThreads, OverflowPolicy pOverflowPolicy) {
+            queue = new ArrayBlockingQueue<>(pQueueCapacity);
+            overflowPolicy = pOverflowPolicy;
+            encoders = Executors.newFixedThreadPool(pEncoderThreads, runnable -> {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY); // stay out of the way of recognition
+                return thread;
+            });
+
+            for (int i = 0; i < pEncoderThreads; i++)
+                encoders.execute(this::encode);
+        }
+
+        private void encode() {
+            try {
+                while (!stopping || !queue.isEmpty()) {
+                    PendingImage pending = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (pending == null)
+                        continue;
+
+                    // A failed write, e.g. to a full disk, must not end
+                    // the encoder: nothing would drain the queue after it.
+                    try {
+                        writeImage(pending.filename, pending.image);
+                        written.incrementAndGet();
+                    } catch (RuntimeException rex) {
+                        failed.incrementAndGet();
+                        RobotLogCommon.d(TAG, "Unable to write " + pending.filename + ": " + rex);
+                    } finally {
+                        MatTracker.release(pending.image);
+                    }
+                }
+            } catch (InterruptedException iex) {
+                // stop() ran out of time
+            }
+        }
+
+        private void enqueue(String pFilename, Mat pImage) {
+            PendingImage pending = new PendingImage(pFilename, MatTracker.track(MatTracker.Stage.ARTIFACT, pImage.clone()));
+            queued.incrementAndGet();
+            switch (overflowPolicy) {
+                case DROP_NEWEST: {
+                    if (!queue.offer(pending))
+                        drop(pending);
+                    break;
+                }
+                case DROP_OLDEST: {
+                    while (!queue.offer(pending)) {
+                        PendingImage oldest = queue.poll();
+                        if (oldest != null)
+                            drop(oldest);
+                    }
+                    break;
+                }
+                case BLOCK: {
+                    try {
+                        queue.put(pending);
+                    } catch (InterruptedException iex) {
+                        drop(pending);
+                        Thread.currentThread().interrupt();
+                    }
+                    break;
+                }
+                default:
+                    throw new AutonomousRobotException(TAG, "Unrecognized overflow policy " + overflowPolicy);
+            }
+        }
+
+        private void drop(PendingImage pPending) {
+            dropped.incrementAndGet();
+            RobotLogCommon.v(TAG, "Dropped " + pPending.filename);
+            MatTracker.release(pPending.image);
+        }
+    }
+
+    // Switch to asynchronous writing. Call stop() when the OpMode is
+    // finished so that the queued images reach the disk. If an earlier
+    // OpMode failed before it could call stop(), its writer stays in
+    // service.
+    public static synchronized void start(int pQueueCapacity, int pEncoderThreads, OverflowPolicy pOverflowPolicy) {
+        if (asyncWriter != null) {
+            RobotLogCommon.d(TAG, "The image file writer is already running");
+            return;
+        }
+
+        asyncWriter = new AsyncWriter(pQueueCapacity, pEncoderThreads, pOverflowPolicy);
+        RobotLogCommon.d(TAG, "Writing image files on " + pEncoderThreads + " threads, queue capacity " +
+                pQueueCapacity + ", " + pOverflowPolicy);
+    }
+
+    // Waits up to pTimeoutMs for the queue to drain and then returns to
+    // synchronous writing. Images still in the queue are discarded.
+    public static synchronized void stop(long pTimeoutMs) throws InterruptedException {
+        AsyncWriter writer = asyncWriter;
+        if (writer == null)
+            return;
+
+        asyncWriter = null;
+        writer.stopping = true;
+        writer.encoders.shutdown();
+        if (!writer.encoders.awaitTermination(pTimeoutMs, TimeUnit.MILLISECONDS)) {
+            writer.encoders.shutdownNow();
+            writer.encoders.awaitTermination(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+
+        PendingImage leftover;
+        while ((leftover = writer.queue.poll()) != null)
+            writer.drop(leftover);
+
+        RobotLogCommon.d(TAG, "Image file writer stopped: queued " + writer.queued.get() +
+                ", written " + writer.written.get() + ", dropped " + writer.dropped.get() +
+                ", failed " + writer.failed.get());
+    }
+
+    // Append the images to pJournal instead of writing PNG files. The
+    // caller remains responsible for closing the journal, after stop()
+    // so that the queued images reach it.
+    public static void attachJournal(FrameJournal pJournal) {
+        frameJournal = pJournal;
+    }
+
+    public static void detachJournal() {
+        frameJournal = null;
+    }
+
+    public static boolean isAsynchronous() {
+        return asyncWriter != null;
+    }
+
+    // Opens a session for a recognition on the current thread. Other
+    // threads that work on the same recognition must call bindSession().
+    public static ArtifactSession beginSession(RobotConstantsCenterStage.ArtifactLevel pArtifactLevel) {
+        ArtifactSession session = new ArtifactSession(pArtifactLevel);
+        threadSession.set(session);
+        return session;
+    }
+
+    public static void bindSession(ArtifactSession pSession) {
+        threadSession.set(pSession);
+    }
+
+    public static void unbindSession() {
+        threadSession.remove();
+    }
+
+    // Closes the session on the current thread. At FAILURES_ONLY the
+    // held images are written if the recognition failed and discarded
+    // otherwise.
+    public static void endSession(ArtifactSession pSession, boolean pFailed) {
+        threadSession.remove();
+        synchronized (pSession.deferred) {
+            for (PendingImage pending : pSession.deferred) {
+                if (pFailed)
+                    writeNow(pending.filename, pending.image);
+                MatTracker.release(pending.image);
+            }
+            pSession.deferred.clear();
+        }
+    }
+
+    // The caller may modify or release pImage as soon as this method
+    // returns.
+    public static void write(String pFilename, Mat pImage) {
+        write(pFilename, pImage, false);
+    }
+
+    // Writes the annotated image that shows the final decision of a
+    // recognition path, which is kept at DECISION_ONLY.
+    public static void writeDecision(String pFilename, Mat pImage) {
+        write(pFilename, pImage, true);
+    }
+
+    private static void write(String pFilename, Mat pImage, boolean pDecision) {
+        ArtifactSession session = threadSession.get();
+        if (session != null) {
+            switch (session.artifactLevel) {
+                case NONE: return;
+                case DECISION_ONLY: {
+                    if (!pDecision)
+                        return;
+                    break;
+                }
+                case FAILURES_ONLY: {
+                    Mat copy = MatTracker.track(MatTracker.Stage.ARTIFACT, pImage.clone());
+                    synchronized (session.deferred) {
+                        session.deferred.add(new PendingImage(pFilename, copy));
+                    }
+                    return;
+                }
+                case ALL: break;
+                default:
+                    throw new AutonomousRobotException(TAG, "Unrecognized artifact level " + session.artifactLevel);
+            }
+        }
+
+        writeNow(pFilename, pImage);
+    }
+
+    private static void writeNow(String pFilename, Mat pImage) {
+        AsyncWriter writer = asyncWriter;
+        if (writer == null) {
+            writeImage(pFilename, pImage);
+            return;
+        }
+
+        writer.enqueue(pFilename, pImage);
+    }
+
+    // Appends pImage to the journal if one is attached and otherwise
+    // writes it as a PNG file.
+    private static void writeImage(String pFilename, Mat pImage) {
+        // The journal keeps the name of the file without its directory
+        // so that the image can be extracted anywhere.
+        FrameJournal journal = frameJournal;
+        if (journal != null && journal.append(new File(pFilename).getName(), pImage))
+            return;
+
+        Imgcodecs.imwrite(pFilename, pImage);
+    }
+
+}
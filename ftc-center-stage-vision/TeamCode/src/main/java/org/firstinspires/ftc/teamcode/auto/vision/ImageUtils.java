@@ -18,12 +18,10 @@ import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -37,6 +35,16 @@ public class ImageUtils {
 
     public static final String TAG = ImageUtils.class.getSimpleName();
 
+    // One instance per thread so that its buffers can be reused; the
+    // camera thread, the pre-start recognition thread and the OpMode
+    // thread may all compute statistics.
+    private static final ThreadLocal<ChannelStatistics> channelStatistics = new ThreadLocal<ChannelStatistics>() {
+        @Override
+        protected ChannelStatistics initialValue() {
+            return new ChannelStatistics();
+        }
+    };
+
     public static Bitmap getBitmapFromMat(Mat pVideoFrameMat, int pVideoFrameHeight, int pVideoFrameWidth) {
         Bitmap outputBitmap = Bitmap.createBitmap(pVideoFrameWidth, pVideoFrameHeight, Bitmap.Config.ARGB_8888);
         Utils.matToBitmap(pVideoFrameMat, outputBitmap);
@@ -50,7 +58,7 @@ public class ImageUtils {
 
         Mat roi = new Mat(pSrcImage, pROIDefinition);
         RobotLogCommon.v(TAG, "Image ROI x " + pROIDefinition.x + ", y " + pROIDefinition.y + ", width " + pROIDefinition.width + ", height " + pROIDefinition.height);
-        return roi;
+        return MatTracker.track(MatTracker.Stage.PREPROCESS, roi);
     }
 
     public static String createOutputFilePreamble(String pImageSource, String pWorkingDirectory, String pFileDate) {
@@ -58,67 +66,116 @@ public class ImageUtils {
         return pWorkingDirectory + pImageSource + "_" + pFileDate;
     }
 
-    // Assumes that pOriginalImage is in BGR order.
+    // pOriginalImage is in BGR order or, if the image source delivers
+    // only the inverted color channel for the alliance, that channel.
+    // Only a BGR image is written as _IMG.png, the suffix of the images
+    // that ReplayImageProvider replays as camera frames; a single
+    // channel is written as _CAP.png.
     public static Mat preProcessImage(Mat pOriginalImage, String pPreamble, VisionParameters.ImageParameters pImageParameters) {
         if (pPreamble != null) {
-            String imageFilename = pPreamble + "_IMG.png";
+            String imageFilename = pPreamble + (pOriginalImage.channels() == 1 ? "_CAP.png" : "_IMG.png");
             RobotLogCommon.d(TAG, "Writing original image " + imageFilename);
-            Imgcodecs.imwrite(imageFilename, pOriginalImage);
+            ImageFileWriter.write(imageFilename, pOriginalImage);
         }
 
         RobotLogCommon.v(TAG, "Image width " + pOriginalImage.cols() + ", height " + pOriginalImage.rows());
-        if ((pOriginalImage.cols() != pImageParameters.resolution_width) ||
-                (pOriginalImage.rows() != pImageParameters.resolution_height))
-            throw new AutonomousRobotException(TAG,
-                    "Mismatch between actual image width and expected image width " + pImageParameters.resolution_width +
-                            ", height " + pImageParameters.resolution_height);
-
-        // Crop the image to reduce distractions.
-        Mat imageROI = getImageROI(pOriginalImage,
-                new Rect(pImageParameters.image_roi.x,
-                        pImageParameters.image_roi.y,
-                        pImageParameters.image_roi.width,
-                        pImageParameters.image_roi.height));
+
+        // If the image source has already cropped the image to the ROI,
+        // e.g. a RawFrameProcessor with a capture ROI, there's nothing
+        // more to do.
+        Mat imageROI;
+        if ((pOriginalImage.cols() == pImageParameters.image_roi.width) &&
+                (pOriginalImage.rows() == pImageParameters.image_roi.height))
+            imageROI = pOriginalImage;
+        else {
+            if ((pOriginalImage.cols() != pImageParameters.resolution_width) ||
+                    (pOriginalImage.rows() != pImageParameters.resolution_height))
+                throw new AutonomousRobotException(TAG,
+                        "Mismatch between actual image width and expected image width " + pImageParameters.resolution_width +
+                                ", height " + pImageParameters.resolution_height);
+
+            // Crop the image to reduce distractions.
+            imageROI = getImageROI(pOriginalImage,
+                    new Rect(pImageParameters.image_roi.x,
+                            pImageParameters.image_roi.y,
+                            pImageParameters.image_roi.width,
+                            pImageParameters.image_roi.height));
+        }
 
         if (pPreamble != null) {
             String imageFilename = pPreamble + "_ROI.png";
             RobotLogCommon.d(TAG, "Writing image ROI " + imageFilename);
-            Imgcodecs.imwrite(imageFilename, imageROI);
+            ImageFileWriter.write(imageFilename, imageROI);
         }
 
         return imageROI;
     }
 
+    // Extract a single channel from a multi-channel 8-bit image and
+    // invert it: dst = 255 - src[pChannel]. extractChannel copies only
+    // the one channel, so Core.split is not needed, and the bitwise_not
+    // runs in place. Nothing is allocated once pInvertedChannel has the
+    // size of the image.
+    public static void extractInvertedChannel(Mat pImage, int pChannel, Mat pInvertedChannel) {
+        int channels = pImage.channels();
+        if (pChannel < 0 || pChannel >= channels)
+            throw new AutonomousRobotException(TAG, "Channel " + pChannel + " is not in an image with " + channels + " channels");
+
+        Core.extractChannel(pImage, pInvertedChannel, pChannel);
+        Core.bitwise_not(pInvertedChannel, pInvertedChannel);
+    }
+
+    // Fill pLUTValues with a lookup table that, for every 8-bit value v,
+    // optionally inverts it, shifts it by pAdjustment with saturation as
+    // convertTo does, and thresholds the result as Imgproc.threshold
+    // does with the same sign convention for pGrayLowThreshold as in
+    // applyGrayThreshold. A single Core.LUT with the table then replaces
+    // three full passes over the image.
+    public static void fillInvertShiftThresholdLUT(boolean pInvert, int pAdjustment, int pGrayLowThreshold, byte[] pLUTValues) {
+        int threshold = Math.abs(pGrayLowThreshold);
+        boolean binaryInv = pGrayLowThreshold < 0;
+        for (int v = 0; v < 256; v++) {
+            int adjusted = Math.max(0, Math.min(255, (pInvert ? 255 - v : v) + pAdjustment));
+            boolean over = adjusted > threshold;
+            pLUTValues[v] = (byte) (over != binaryInv ? 255 : 0);
+        }
+    }
+
     // Adjust the median of a grayscale image.
     public static Mat adjustGrayscaleMedian(Mat pGray, int pTarget) {
+        return MatTracker.track(MatTracker.Stage.THRESHOLD, adjustGrayscaleMedian(pGray, pTarget, new Mat()));
+    }
+
+    // Same as above but the output goes to pAdjustedGray, e.g. a Mat
+    // from a RecognitionWorkspace, which is also returned.
+    public static Mat adjustGrayscaleMedian(Mat pGray, int pTarget, Mat pAdjustedGray) {
         int medianGray = getSingleChannelMedian(pGray);
         RobotLogCommon.d(TAG, "Original image: grayscale median " + medianGray);
         RobotLogCommon.d(TAG, "Grayscale median target " + pTarget);
 
         // adjustment = target - median;
         int adjustment = pTarget - medianGray;
-        Mat adjustedGray = new Mat();
-        pGray.convertTo(adjustedGray, -1, 1, adjustment);
+        pGray.convertTo(pAdjustedGray, -1, 1, adjustment);
         RobotLogCommon.d(TAG, "Grayscale adjustment " + adjustment);
 
-        return adjustedGray;
+        return pAdjustedGray;
     }
 
     // Adjust image saturation and value levels in the image to match the targets.
     public static Mat adjustSaturationAndValueMedians(Mat pHSVImage, int pSatMedianTarget, int pValMedianTarget) {
-        // Split the image into its constituent HSV channels
-        ArrayList<Mat> channels = new ArrayList<>();
-        Core.split(pHSVImage, channels);
-
         // Get the median of the S channel.
-        int medianSaturation = getColorChannelMedian(channels.get(1), new Mat());
+        int medianSaturation = getColorChannelMedian(pHSVImage, 1, null);
 
         // Get the median of the V channel.
-        int medianValue = getColorChannelMedian(channels.get(2), new Mat());
+        int medianValue = getColorChannelMedian(pHSVImage, 2, null);
 
         RobotLogCommon.d(TAG, "HSV saturation channel median " + medianSaturation);
         RobotLogCommon.d(TAG, "HSV value channel median " + medianValue);
 
+        // Split the image into its constituent HSV channels
+        ArrayList<Mat> channels = new ArrayList<>();
+        Core.split(pHSVImage, channels);
+
         // adjustment = target - median;
         int satAdjustment = pSatMedianTarget - medianSaturation;
         int valAdjustment = pValMedianTarget - medianValue;
@@ -134,6 +191,30 @@ public class ImageUtils {
         return adjustedImage;
     }
 
+    // Same as above but adjusts pHSVImage in place. Adding a Scalar with
+    // saturation is equivalent to convertTo on each channel but does not
+    // need Core.split and Core.merge, which allocate on every call.
+    public static Mat adjustSaturationAndValueMediansInPlace(Mat pHSVImage, int pSatMedianTarget, int pValMedianTarget) {
+        // Get the median of the S channel.
+        int medianSaturation = getColorChannelMedian(pHSVImage, 1, null);
+
+        // Get the median of the V channel.
+        int medianValue = getColorChannelMedian(pHSVImage, 2, null);
+
+        RobotLogCommon.d(TAG, "HSV saturation channel median " + medianSaturation);
+        RobotLogCommon.d(TAG, "HSV value channel median " + medianValue);
+
+        // adjustment = target - median;
+        int satAdjustment = pSatMedianTarget - medianSaturation;
+        int valAdjustment = pValMedianTarget - medianValue;
+        Core.add(pHSVImage, new Scalar(0, satAdjustment, valAdjustment), pHSVImage);
+
+        RobotLogCommon.d(TAG, "Adjust HSV saturation by " + satAdjustment + " to " + pSatMedianTarget);
+        RobotLogCommon.d(TAG, "Adjust HSV value by " + valAdjustment + " to " + pValMedianTarget);
+
+        return pHSVImage;
+    }
+
     // See https://docs.opencv.org/3.4/d8/dbc/tutorial_histogram_calculation.html
     public static int getDominantHSVHue(Mat pHSVImageIn, Mat pMask) {
         List<Mat> channelsHSV = new ArrayList<>();
@@ -195,7 +276,7 @@ public class ImageUtils {
         if (pOutputFilenamePreamble != null && (RobotLogCommon.isLoggable("v") || RobotLogCommon.usingFTCRobotLog())) {
             Mat adjustedBGR = new Mat();
             Imgproc.cvtColor(adjusted, adjustedBGR, Imgproc.COLOR_HSV2BGR);
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png", adjustedBGR);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png", adjustedBGR);
             RobotLogCommon.v(TAG, "Writing " + pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png");
         }
 
@@ -203,13 +284,42 @@ public class ImageUtils {
                 pHSVParameters.saturation_threshold_low, pHSVParameters.value_threshold_low);
 
         if (pOutputFilenamePreamble != null) {
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_ADJ_THR" + pFilenameSuffix + ".png", thresholded);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_ADJ_THR" + pFilenameSuffix + ".png", thresholded);
             RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_ADJ_THR" + pFilenameSuffix + ".png");
         }
 
         return thresholded;
     }
 
+    // Same as above but all intermediate images come from pWorkspace.
+    // The returned binary image is pWorkspace.thresholded.
+    public static Mat performInRange(Mat pInputROI, String pOutputFilenamePreamble, String pFilenameSuffix,
+                                     VisionParameters.HSVParameters pHSVParameters, RecognitionWorkspace pWorkspace) {
+        // We're on the HSV path.
+        Imgproc.cvtColor(pInputROI, pWorkspace.hsv, Imgproc.COLOR_BGR2HSV);
+
+        // Adjust the HSV saturation and value levels in the image to match the targets.
+        adjustSaturationAndValueMediansInPlace(pWorkspace.hsv, pHSVParameters.saturation_median_target, pHSVParameters.value_median_target);
+
+        // Convert back to BGR.
+        if (pOutputFilenamePreamble != null && (RobotLogCommon.isLoggable("v") || RobotLogCommon.usingFTCRobotLog())) {
+            Imgproc.cvtColor(pWorkspace.hsv, pWorkspace.drawing, Imgproc.COLOR_HSV2BGR);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png", pWorkspace.drawing);
+            RobotLogCommon.v(TAG, "Writing " + pOutputFilenamePreamble + "_ADJ" + pFilenameSuffix + ".png");
+        }
+
+        applyInRange(pWorkspace.hsv, pHSVParameters.hue_low, pHSVParameters.hue_high,
+                pHSVParameters.saturation_threshold_low, pHSVParameters.value_threshold_low,
+                pWorkspace.thresholded, pWorkspace.scratch);
+
+        if (pOutputFilenamePreamble != null) {
+            ImageFileWriter.write(pOutputFilenamePreamble + "_ADJ_THR" + pFilenameSuffix + ".png", pWorkspace.thresholded);
+            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_ADJ_THR" + pFilenameSuffix + ".png");
+        }
+
+        return pWorkspace.thresholded;
+    }
+
     // Use inRange to threshold a median-adjusted HSV image to binary.
     // Account for hue ranges that cross the 180 degree boundary.
     // Red, for example, might have a hueLow of 170 and a hueHigh of 10.
@@ -217,6 +327,19 @@ public class ImageUtils {
     public static Mat applyInRange(Mat pAdjustedMedianROI,
                                    int pHueLow, int pHueHigh,
                                    int pSatLowThreshold, int pValLowThreshold) {
+        Mat scratch = new Mat();
+        Mat thresholded = applyInRange(pAdjustedMedianROI, pHueLow, pHueHigh, pSatLowThreshold, pValLowThreshold,
+                new Mat(), scratch);
+        scratch.release();
+        return MatTracker.track(MatTracker.Stage.THRESHOLD, thresholded);
+    }
+
+    // Same as above but the output goes to pThresholded; pScratch is
+    // only used if the hue range crosses the 180 degree boundary.
+    public static Mat applyInRange(Mat pAdjustedMedianROI,
+                                   int pHueLow, int pHueHigh,
+                                   int pSatLowThreshold, int pValLowThreshold,
+                                   Mat pThresholded, Mat pScratch) {
         RobotLogCommon.d(TAG, "Actual inRange HSV arguments: hue low " + pHueLow + ", hue high " + pHueHigh);
         RobotLogCommon.d(TAG, "Actual inRange HSV arguments: saturation low " + pSatLowThreshold + ", value low " + pValLowThreshold);
 
@@ -226,20 +349,17 @@ public class ImageUtils {
             throw new AutonomousRobotException(TAG, "Hue out of range");
 
         // Normal hue range.
-        Mat thresholded = new Mat();
         if (pHueLow < pHueHigh)
-            Core.inRange(pAdjustedMedianROI, new Scalar(pHueLow, pSatLowThreshold, pValLowThreshold), new Scalar(pHueHigh, 255, 255), thresholded);
+            Core.inRange(pAdjustedMedianROI, new Scalar(pHueLow, pSatLowThreshold, pValLowThreshold), new Scalar(pHueHigh, 255, 255), pThresholded);
         else {
             // For a hue range from the XML file of low 170, high 10
             // the following yields two new ranges: 170 - 180 and 0 - 10.
-            Mat range1 = new Mat();
-            Mat range2 = new Mat();
-            Core.inRange(pAdjustedMedianROI, new Scalar(pHueLow, pSatLowThreshold, pValLowThreshold), new Scalar(180, 255, 255), range1);
-            Core.inRange(pAdjustedMedianROI, new Scalar(0, pSatLowThreshold, pValLowThreshold), new Scalar(pHueHigh, 255, 255), range2);
-            Core.bitwise_or(range1, range2, thresholded);
+            Core.inRange(pAdjustedMedianROI, new Scalar(pHueLow, pSatLowThreshold, pValLowThreshold), new Scalar(180, 255, 255), pThresholded);
+            Core.inRange(pAdjustedMedianROI, new Scalar(0, pSatLowThreshold, pValLowThreshold), new Scalar(pHueHigh, 255, 255), pScratch);
+            Core.bitwise_or(pThresholded, pScratch, pThresholded);
         }
 
-        return thresholded;
+        return pThresholded;
     }
 
     // Combine the frequently associated steps of applying inRange to
@@ -250,13 +370,11 @@ public class ImageUtils {
     public static List<MatOfPoint> performInRangeAndFindContours(Mat pInputROI,
                                                                  String pOutputFilenamePreamble, VisionParameters.HSVParameters pHSVParameters) {
         Mat thresholded = performInRange(pInputROI, pOutputFilenamePreamble, pHSVParameters);
-        Mat morphed = new Mat();
-        Imgproc.erode(thresholded, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-        Imgproc.dilate(morphed, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
+        Morphology.open(thresholded, thresholded, Imgproc.MORPH_RECT, 5);
 
         // Identify the contours
         List<MatOfPoint> contours = new ArrayList<>();
-        Imgproc.findContours(morphed, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+        Imgproc.findContours(thresholded, contours, new Mat(), Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
         return contours;
     }
 
@@ -285,7 +403,7 @@ public class ImageUtils {
         Imgproc.cvtColor(pBGRInputROI, grayROI, Imgproc.COLOR_BGR2GRAY);
 
         if (pOutputFilenamePreamble != null && (RobotLogCommon.isLoggable("v") || RobotLogCommon.usingFTCRobotLog())) {
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_GRAY.png", grayROI);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_GRAY.png", grayROI);
             RobotLogCommon.v(TAG, "Writing " + pOutputFilenamePreamble + "_GRAY.png");
         }
 
@@ -296,14 +414,14 @@ public class ImageUtils {
                                              int pGrayscaleMedianTarget, int pLowThreshold) {
         Mat adjustedGray = adjustGrayscaleMedian(pGrayInputROI, pGrayscaleMedianTarget);
         if (pOutputFilenamePreamble != null && (RobotLogCommon.isLoggable("v") || RobotLogCommon.usingFTCRobotLog())) {
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_ADJ.png", adjustedGray);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_ADJ.png", adjustedGray);
             RobotLogCommon.v(TAG, "Writing adjusted grayscale image " + pOutputFilenamePreamble + "_ADJ.png");
         }
 
         Mat thresholded = applyGrayThreshold(adjustedGray, pLowThreshold);
 
         if (pOutputFilenamePreamble != null) {
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_ADJ_THR.png", thresholded);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_ADJ_THR.png", thresholded);
             RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_ADJ_THR.png");
         }
 
@@ -317,9 +435,7 @@ public class ImageUtils {
     // But this one does with convincing results:
     // https://docs.opencv.org/4.x/d7/d4d/tutorial_py_thresholding.html
     public static Mat applyGrayThreshold(Mat pGrayInputROI, int pGrayLowThreshold) {
-        Mat morphed = new Mat();
-        Imgproc.erode(pGrayInputROI, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
-        Imgproc.dilate(morphed, morphed, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(5, 5)));
+        Mat morphed = Morphology.open(pGrayInputROI, new Mat(), Imgproc.MORPH_RECT, 5);
 
         // Remove noise by Gaussian blurring.
         Mat blurred = new Mat();
@@ -336,26 +452,38 @@ public class ImageUtils {
         return thresholded;
     }
 
+    // Same as above but all intermediate images come from pWorkspace;
+    // the morphological operations, the blur and the threshold all run
+    // in place in pWorkspace.thresholded, which is returned.
+    public static Mat applyGrayThreshold(Mat pGrayInputROI, int pGrayLowThreshold, RecognitionWorkspace pWorkspace) {
+        Mat thresholded = Morphology.open(pGrayInputROI, pWorkspace.thresholded, Imgproc.MORPH_RECT, pWorkspace.largeMorphologyKernel);
+
+        // Remove noise by Gaussian blurring.
+        Imgproc.GaussianBlur(thresholded, thresholded, new Size(5, 5), 0);
+
+        RobotLogCommon.v(TAG, "Threshold values: low " + pGrayLowThreshold + ", high 255");
+
+        // Threshold the image: set pixels over the threshold value to white.
+        Imgproc.threshold(thresholded, thresholded,
+                Math.abs(pGrayLowThreshold),    // threshold value
+                255,   // white
+                pGrayLowThreshold >= 0 ? Imgproc.THRESH_BINARY : Imgproc.THRESH_BINARY_INV); // thresholding type
+        return thresholded;
+    }
+
     // Get the median of any single-channel Mat.
     public static int getSingleChannelMedian(Mat pSingleChannelMat) {
-        if ((pSingleChannelMat.dims() != 2) || (!pSingleChannelMat.isContinuous()))
+        if ((pSingleChannelMat.dims() != 2) || (pSingleChannelMat.channels() != 1))
             throw new AutonomousRobotException(TAG, "Expected a single-channel Mat");
 
-        byte[] byteBuff = new byte[(int) pSingleChannelMat.total()];
-        int[] intBuff = new int[(int) pSingleChannelMat.total()];
-        int buffLength = byteBuff.length;
-        pSingleChannelMat.get(0, 0, byteBuff);
-
-        // !! Since Java does not have an unsigned char data type, the byte values
-        // may come out as negative. So we have to use a separate array of ints and
-        // copy in the bytes with the lower 8 bytes preserved.
-        // https://stackoverflow.com/questions/9581530/converting-from-byte-to-int-in-java
-        for (int i = 0; i < buffLength; i++)
-            // Requires Android API level 26 = Byte.toUnsignedInt(byteBuff[i]);
-            intBuff[i] = byteBuff[i] & 0xFF;
-
-        Arrays.sort(intBuff);
-        return (intBuff[buffLength / 2] + (intBuff[(buffLength / 2) - 1])) / 2;
+        return channelStatistics.get().compute(pSingleChannelMat).getMedian();
+    }
+
+    // The statistics engine for the calling thread, for callers that
+    // need more than the median. The returned instance must not be
+    // passed to another thread.
+    public static ChannelStatistics getChannelStatistics() {
+        return channelStatistics.get();
     }
 
     // Sort contours by area in descending order.
@@ -384,7 +512,7 @@ public class ImageUtils {
         if (pOutputFilenamePreamble != null && (RobotLogCommon.isLoggable("v") || RobotLogCommon.usingFTCRobotLog())) {
             Mat contoursDrawn = pImageROI.clone();
             ShapeDrawing.drawShapeContours(contours, contoursDrawn);
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "_CON.png", contoursDrawn);
+            ImageFileWriter.write(pOutputFilenamePreamble + "_CON.png", contoursDrawn);
             RobotLogCommon.v(TAG, "Writing " + pOutputFilenamePreamble + "_CON.png");
         }
 
@@ -407,15 +535,11 @@ public class ImageUtils {
     }
 
     public static Pair<Integer, Integer> getMedianSaturationAndValue(Mat pHSVImage) {
-        // Split the image into its constituent HSV channels
-        ArrayList<Mat> channels = new ArrayList<>();
-        Core.split(pHSVImage, channels);
-
         // Get the median of the S channel.
-        int medianSaturation = getColorChannelMedian(channels.get(1), new Mat());
+        int medianSaturation = getColorChannelMedian(pHSVImage, 1, null);
 
         // Get the median of the V channel.
-        int medianValue = getColorChannelMedian(channels.get(2), new Mat());
+        int medianValue = getColorChannelMedian(pHSVImage, 2, null);
 
         RobotLogCommon.d(TAG, "HSV saturation channel median " + medianSaturation);
         RobotLogCommon.d(TAG, "HSV value channel median " + medianValue);
@@ -423,14 +547,12 @@ public class ImageUtils {
         return Pair.create(medianSaturation, medianValue);
     }
 
-    // Get the median of a color channel.
-    private static int getColorChannelMedian(Mat pChannel, Mat pMask) {
-        // If we're dealing with a non-masked image then we just take the median
-        // of all the pixels.
-        if (pMask.total() == 0) {
-            return getSingleChannelMedian(pChannel);
-        } else
-            throw new AutonomousRobotException(TAG, "getColorChannelMedian with mask is not supported at this time");
+    // Get the median of one channel of an image. If pMask is null or
+    // empty we just take the median of all the pixels; otherwise only
+    // of the pixels for which the mask is non-zero. There's no need
+    // to split the image into its channels first.
+    public static int getColorChannelMedian(Mat pImage, int pChannel, Mat pMask) {
+        return channelStatistics.get().compute(pImage, pChannel, pMask).getMedian();
     }
 
 }
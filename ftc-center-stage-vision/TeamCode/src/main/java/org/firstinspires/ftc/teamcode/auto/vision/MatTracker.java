@@ -0,0 +1,130 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.Mat;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Opt-in accounting of the OpenCV Mats created and released by the
+// vision code, by pipeline stage. When tracking is disabled, which is
+// the default, track() does nothing and release() only releases the
+// Mat. The counters are static so they survive from one OpMode to the
+// next without a cold restart of the Robot Controller; a count of
+// outstanding Mats that keeps growing from run to run indicates a leak.
+public class MatTracker {
+    private static final String TAG = MatTracker.class.getSimpleName();
+
+    public enum Stage {CAPTURE, PREPROCESS, CHANNEL, THRESHOLD, RECOGNITION, RENDERING, WORKSPACE, ARTIFACT}
+
+    private static volatile boolean enabled;
+
+    // All of the fields below are guarded by the class lock.
+    private static final EnumMap<Stage, StageCounts> stageCounts = new EnumMap<>(Stage.class);
+    // Mat does not override equals() or hashCode() so this is in effect
+    // a weak identity map. A Mat that is garbage collected without a
+    // call to release() drops out and is counted as finalized.
+    private static final WeakHashMap<Mat, Stage> outstandingMats = new WeakHashMap<>();
+
+    static {
+        for (Stage stage : Stage.values())
+            stageCounts.put(stage, new StageCounts());
+    }
+
+    private static class StageCounts {
+        // Since the last report.
+        private long allocations;
+        private long bytesAllocated;
+        private long releases;
+
+        // Since tracking started.
+        private long totalAllocations;
+        private long totalReleases;
+    }
+
+    public static void setEnabled(boolean pEnabled) {
+        enabled = pEnabled;
+        RobotLogCommon.d(TAG, "Mat tracking " + (pEnabled ? "enabled" : "disabled"));
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // Call after the Mat has been allocated, preferably after it has
+    // been filled so that its size is known. A header on another Mat,
+    // e.g. an ROI, counts as an allocation of 0 bytes. Returns pMat for
+    // convenience.
+    public static Mat track(Stage pStage, Mat pMat) {
+        if (!enabled)
+            return pMat;
+
+        synchronized (MatTracker.class) {
+            if (outstandingMats.put(pMat, pStage) != null)
+                return pMat; // already tracked
+
+            StageCounts counts = stageCounts.get(pStage);
+            counts.allocations++;
+            counts.totalAllocations++;
+            counts.bytesAllocated += byteSize(pMat);
+        }
+
+        return pMat;
+    }
+
+    // Releases the Mat whether or not it is tracked.
+    public static void release(Mat pMat) {
+        if (enabled) {
+            synchronized (MatTracker.class) {
+                Stage stage = outstandingMats.remove(pMat);
+                if (stage != null) {
+                    StageCounts counts = stageCounts.get(stage);
+                    counts.releases++;
+                    counts.totalReleases++;
+                }
+            }
+        }
+
+        pMat.release();
+    }
+
+    // Log the counts for each stage and start a new reporting period.
+    public static synchronized void report(String pTitle) {
+        if (!enabled)
+            return;
+
+        EnumMap<Stage, Long> outstandingCounts = new EnumMap<>(Stage.class);
+        EnumMap<Stage, Long> outstandingBytes = new EnumMap<>(Stage.class);
+        for (Map.Entry<Mat, Stage> entry : outstandingMats.entrySet()) {
+            outstandingCounts.merge(entry.getValue(), 1L, Long::sum);
+            outstandingBytes.merge(entry.getValue(), byteSize(entry.getKey()), Long::sum);
+        }
+
+        RobotLogCommon.d(TAG, "Mat usage " + pTitle);
+        for (Map.Entry<Stage, StageCounts> entry : stageCounts.entrySet()) {
+            StageCounts counts = entry.getValue();
+            long outstanding = outstandingCounts.getOrDefault(entry.getKey(), 0L);
+            if (counts.totalAllocations == 0)
+                continue;
+
+            long finalized = counts.totalAllocations - counts.totalReleases - outstanding;
+            RobotLogCommon.d(TAG, entry.getKey() + ": allocated " + counts.allocations +
+                    " (" + counts.bytesAllocated + " bytes), released " + counts.releases +
+                    "; outstanding " + outstanding + " (" + outstandingBytes.getOrDefault(entry.getKey(), 0L) + " bytes)" +
+                    ", left to the finalizer " + finalized);
+
+            counts.allocations = 0;
+            counts.bytesAllocated = 0;
+            counts.releases = 0;
+        }
+    }
+
+    // A submatrix shares the data of its parent.
+    private static long byteSize(Mat pMat) {
+        if (pMat.empty() || pMat.isSubmatrix())
+            return 0;
+        return pMat.total() * pMat.elemSize();
+    }
+
+}
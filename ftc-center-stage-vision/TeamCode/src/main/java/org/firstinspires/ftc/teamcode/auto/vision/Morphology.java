@@ -0,0 +1,110 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Morphological opening and closing with structuring elements that are
+// created once and shared, instead of on every frame. The source and
+// the destination may be the same Mat, in which case the operation
+// runs in place.
+//
+// The strategy decides how an operation is carried out; all three give
+// the same result. TWO_PASS is a separate erode and dilate; FUSED is a
+// single morphologyEx; SEPARABLE applies a rectangular kernel as a
+// 1 x n row pass followed by an n x 1 column pass, so that the cost
+// grows with n instead of n * n. Kernels of other shapes are not
+// separable and fall back to FUSED. MorphologyBenchmark compares the
+// strategies on the Control Hub.
+public class Morphology {
+    private static final String TAG = Morphology.class.getSimpleName();
+
+    public enum Strategy {TWO_PASS, FUSED, SEPARABLE}
+
+    private static volatile Strategy strategy = Strategy.FUSED;
+
+    // Keyed by shape, width and height. The kernels live for as long as
+    // the Robot Controller application.
+    private static final ConcurrentHashMap<Long, Mat> kernels = new ConcurrentHashMap<>();
+
+    private Morphology() {}
+
+    public static Strategy getStrategy() {
+        return strategy;
+    }
+
+    public static void setStrategy(Strategy pStrategy) {
+        RobotLogCommon.d(TAG, "Morphology strategy " + pStrategy);
+        strategy = pStrategy;
+    }
+
+    // pShape is one of Imgproc.MORPH_RECT, MORPH_ELLIPSE or MORPH_CROSS.
+    public static Mat getKernel(int pShape, int pWidth, int pHeight) {
+        Long key = ((long) pShape << 40) | ((long) pWidth << 20) | pHeight;
+        Mat kernel = kernels.get(key);
+        if (kernel == null) {
+            Mat newKernel = Imgproc.getStructuringElement(pShape, new Size(pWidth, pHeight));
+            kernel = kernels.putIfAbsent(key, newKernel);
+            if (kernel == null)
+                kernel = newKernel;
+            else
+                newKernel.release(); // another thread got there first
+        }
+        return kernel;
+    }
+
+    // Erode, then dilate.
+    public static Mat open(Mat pSource, Mat pDestination, int pShape, int pSize) {
+        return apply(Imgproc.MORPH_OPEN, pSource, pDestination, pShape, pSize);
+    }
+
+    // Dilate, then erode.
+    public static Mat close(Mat pSource, Mat pDestination, int pShape, int pSize) {
+        return apply(Imgproc.MORPH_CLOSE, pSource, pDestination, pShape, pSize);
+    }
+
+    private static Mat apply(int pOperation, Mat pSource, Mat pDestination, int pShape, int pSize) {
+        Strategy currentStrategy = strategy;
+        if (currentStrategy == Strategy.SEPARABLE && pShape != Imgproc.MORPH_RECT)
+            currentStrategy = Strategy.FUSED;
+
+        boolean opening = pOperation == Imgproc.MORPH_OPEN;
+        switch (currentStrategy) {
+            case TWO_PASS: {
+                Mat kernel = getKernel(pShape, pSize, pSize);
+                if (opening) {
+                    Imgproc.erode(pSource, pDestination, kernel);
+                    Imgproc.dilate(pDestination, pDestination, kernel);
+                } else {
+                    Imgproc.dilate(pSource, pDestination, kernel);
+                    Imgproc.erode(pDestination, pDestination, kernel);
+                }
+                break;
+            }
+            case SEPARABLE: {
+                Mat row = getKernel(Imgproc.MORPH_RECT, pSize, 1);
+                Mat column = getKernel(Imgproc.MORPH_RECT, 1, pSize);
+                if (opening) {
+                    Imgproc.erode(pSource, pDestination, row);
+                    Imgproc.erode(pDestination, pDestination, column);
+                    Imgproc.dilate(pDestination, pDestination, row);
+                    Imgproc.dilate(pDestination, pDestination, column);
+                } else {
+                    Imgproc.dilate(pSource, pDestination, row);
+                    Imgproc.dilate(pDestination, pDestination, column);
+                    Imgproc.erode(pDestination, pDestination, row);
+                    Imgproc.erode(pDestination, pDestination, column);
+                }
+                break;
+            }
+            default:
+                Imgproc.morphologyEx(pSource, pDestination, pOperation, getKernel(pShape, pSize, pSize));
+        }
+
+        return pDestination;
+    }
+
+}
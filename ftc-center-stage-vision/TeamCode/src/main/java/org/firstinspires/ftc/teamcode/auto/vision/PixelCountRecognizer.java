@@ -0,0 +1,85 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// The pixel count paths threshold the ROI and then take the visible
+// spike window with the most white pixels. Subclasses supply the
+// thresholded image.
+public abstract class PixelCountRecognizer extends SpikeWindowRecognizer {
+
+    private static final String TAG = PixelCountRecognizer.class.getSimpleName();
+
+    private final int minWhitePixelCount;
+    private final SpikeWindowScoring windowScoring;
+
+    protected PixelCountRecognizer(RobotConstants.Alliance pAlliance, int pMinWhitePixelCount,
+                                   SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        super(pAlliance, pSpikeWindowMapping, pWorkspace);
+        minWhitePixelCount = pMinWhitePixelCount;
+        windowScoring = new SpikeWindowScoring(pWorkspace);
+    }
+
+    // Returns a binary image of the ROI in which the pixels that may
+    // belong to the Team Prop are white.
+    protected abstract Mat threshold(Mat pImageROI, String pOutputFilenamePreamble);
+
+    @Override
+    public TeamPropReturn recognize(Mat pImageROI, String pOutputFilenamePreamble) {
+        // Threshold the image: set pixels over the threshold value to white.
+        Mat thresholded = threshold(pImageROI, pOutputFilenamePreamble);
+
+        if (pOutputFilenamePreamble != null) {
+            String thrFilename = pOutputFilenamePreamble + "_THR.png";
+            ImageFileWriter.write(thrFilename, thresholded);
+            RobotLogCommon.d(TAG, "Writing " + thrFilename);
+        }
+
+        // Get the white pixel count for each of the visible spike
+        // windows from a single integral image.
+        windowScoring.computeIntegral(thresholded);
+        EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, SpikeWindowScoring.WindowScore> windowScores =
+                windowScoring.scoreWindows(spikeWindows, spikeWindowMapping.windowGrid);
+
+        // Take the window with the highest count; on a tie the window
+        // that comes first, i.e. the leftmost, wins.
+        SpikeWindowScoring.WindowScore bestScore = null;
+        for (Map.Entry<RobotConstantsCenterStage.SpikeLocationWindow, SpikeWindowScoring.WindowScore> entry : windowScores.entrySet()) {
+            SpikeWindowScoring.WindowScore score = entry.getValue();
+            RobotLogCommon.d(TAG, entry.getKey() + " spike window white pixel count " + score.whitePixelCount +
+                    ", best grid cell " + score.bestCell + " count " + score.bestCellWhitePixelCount);
+            if (bestScore == null || score.whitePixelCount > bestScore.whitePixelCount)
+                bestScore = score;
+        }
+
+        // If all of the counts are less than the minimum then we infer
+        // that the Team Prop is in the non-visible spike window.
+        if (bestScore.whitePixelCount < minWhitePixelCount)
+            return nposReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL,
+                    "White pixel counts for all visible spike windows were under the threshold",
+                    colorImageForOutput(pImageROI, pOutputFilenamePreamble), pOutputFilenamePreamble);
+
+        // Mark the grid cell with the most white pixels in the winning
+        // window; with a 1 x 1 grid this is the center of the window.
+        Point bestCellCenter = new Point(bestScore.bestCell.x + (bestScore.bestCell.width / 2.0),
+                bestScore.bestCell.y + (bestScore.bestCell.height / 2.0));
+        RobotLogCommon.d(TAG, "Team Prop in the spike window for " + bestScore.propLocation + " near " + bestCellCenter);
+
+        Mat pixelCountOut = colorImageForOutput(pImageROI, pOutputFilenamePreamble);
+        if (pixelCountOut != null) {
+            Imgproc.circle(pixelCountOut, bestCellCenter, 10, new Scalar(0, 255, 0));
+            SpikeWindowUtils.drawSpikeWindows(pixelCountOut, spikeWindows, pOutputFilenamePreamble);
+        }
+        return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, bestScore.propLocation);
+    }
+
+}
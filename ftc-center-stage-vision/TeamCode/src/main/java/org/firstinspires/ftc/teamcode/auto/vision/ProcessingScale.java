@@ -0,0 +1,175 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.firstinspires.ftc.teamcode.xml.VisionParameters;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Recognition on a downscaled copy of the ROI. A scale of 1/2, 1/4, ...
+// uses one pyrDown per halving; any other scale uses an INTER_AREA
+// resize. The geometry in the SpikeWindowMapping and the sizes and
+// counts in the TeamPropParameters are rescaled to match so that the
+// recognizers work unchanged on the smaller image; the morphology
+// kernels are scaled in the RecognitionWorkspace. The HoughCircles
+// accumulator threshold param2 scales with the scale, since a smaller
+// circle has fewer pixels to vote for it. Intensities, e.g. thresholds
+// and median targets, are not affected.
+public class ProcessingScale {
+    private static final String TAG = ProcessingScale.class.getSimpleName();
+
+    public final double scale;
+    private final int pyramidLevels; // -1 unless the scale is 1/2^n
+
+    public ProcessingScale(double pScale) {
+        if (pScale <= 0.0 || pScale > 1.0)
+            throw new AutonomousRobotException(TAG, "The processing scale must be greater than 0 and at most 1");
+
+        scale = pScale;
+        int levels = 0;
+        double halved = 1.0;
+        while (halved > pScale) {
+            halved /= 2.0;
+            levels++;
+        }
+        pyramidLevels = halved == pScale ? levels : -1;
+    }
+
+    public boolean isFullScale() {
+        return scale == 1.0;
+    }
+
+    // The length in the downscaled image of a dimension of the ROI; the
+    // same rounding as pyrDown or resize.
+    public int scaledLength(int pFullLength) {
+        if (pyramidLevels < 0)
+            return Math.max(1, (int) Math.round(pFullLength * scale));
+
+        int length = pFullLength;
+        for (int i = 0; i < pyramidLevels; i++)
+            length = (length + 1) / 2;
+        return length;
+    }
+
+    // A kernel size in the downscaled image: at least 1 and odd.
+    public int scaledKernelSize(double pFullKernelSize) {
+        int kernel = Math.max(1, (int) Math.round(pFullKernelSize * scale));
+        return (kernel % 2 == 0) ? kernel + 1 : kernel;
+    }
+
+    // Returns pScaledROI, or pImageROI itself at full scale.
+    public Mat downscale(Mat pImageROI, Mat pScaledROI) {
+        if (isFullScale())
+            return pImageROI;
+
+        if (pyramidLevels < 0) {
+            Imgproc.resize(pImageROI, pScaledROI,
+                    new Size(scaledLength(pImageROI.cols()), scaledLength(pImageROI.rows())), 0, 0, Imgproc.INTER_AREA);
+            return pScaledROI;
+        }
+
+        Imgproc.pyrDown(pImageROI, pScaledROI);
+        for (int i = 1; i < pyramidLevels; i++)
+            Imgproc.pyrDown(pScaledROI, pScaledROI);
+        return pScaledROI;
+    }
+
+    // The ROI and the spike windows in the coordinates of the downscaled
+    // ROI. The returned mapping is at full scale with respect to itself.
+    public SpikeWindowMapping scaleSpikeWindowMapping(SpikeWindowMapping pSpikeWindowMapping) {
+        if (isFullScale())
+            return pSpikeWindowMapping;
+
+        VisionParameters.ImageParameters imageParameters = pSpikeWindowMapping.imageParameters;
+        int fullWidth = imageParameters.image_roi.width;
+        int fullHeight = imageParameters.image_roi.height;
+        int scaledWidth = scaledLength(fullWidth);
+        int scaledHeight = scaledLength(fullHeight);
+        double scaleX = (double) scaledWidth / fullWidth;
+        double scaleY = (double) scaledHeight / fullHeight;
+
+        EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> scaledWindows =
+                new EnumMap<>(RobotConstantsCenterStage.SpikeLocationWindow.class);
+        for (Map.Entry<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> entry :
+                pSpikeWindowMapping.spikeWindows.entrySet()) {
+            Rect window = entry.getValue().first;
+            int x = (int) Math.round(window.x * scaleX);
+            int y = (int) Math.round(window.y * scaleY);
+            Rect scaledWindow = new Rect(x, y,
+                    (int) Math.round((window.x + window.width) * scaleX) - x,
+                    (int) Math.round((window.y + window.height) * scaleY) - y);
+            scaledWindows.put(entry.getKey(), Pair.create(scaledWindow, entry.getValue().second));
+        }
+
+        Rect roi = imageParameters.image_roi;
+        VisionParameters.ImageParameters scaledImageParameters = new VisionParameters.ImageParameters(imageParameters.image_source,
+                scaledLength(imageParameters.resolution_width), scaledLength(imageParameters.resolution_height),
+                new Rect((int) Math.round(roi.x * scaleX), (int) Math.round(roi.y * scaleY), scaledWidth, scaledHeight));
+
+        return new SpikeWindowMapping(scaledImageParameters, pSpikeWindowMapping.recognitionPath, scaledWindows,
+                pSpikeWindowMapping.consensusParameters, pSpikeWindowMapping.windowGrid, pSpikeWindowMapping.ensembleParameters,
+                pSpikeWindowMapping.artifactLevel, pSpikeWindowMapping.frameJournal, 1.0);
+    }
+
+    // Lengths scale with the scale, pixel counts with its square and blur
+    // kernels stay odd.
+    public TeamPropParameters scaleTeamPropParameters(TeamPropParameters pTeamPropParameters) {
+        if (isFullScale())
+            return pTeamPropParameters;
+
+        TeamPropParameters.ColorChannelCirclesParameters circles = pTeamPropParameters.colorChannelCirclesParameters;
+        TeamPropParameters.ColorChannelCirclesParameters scaledCircles = null;
+        if (circles != null) {
+            TeamPropParameters.HoughCirclesFunctionCallParameters hough = circles.houghCirclesFunctionCallParameters;
+            scaledCircles = new TeamPropParameters.ColorChannelCirclesParameters(circles.grayParameters,
+                    new TeamPropParameters.HoughCirclesFunctionCallParameters(hough.dp, hough.minDist * scale,
+                            hough.param1, Math.max(1.0, hough.param2 * scale), scaleRadius(hough.minRadius), scaleRadius(hough.maxRadius)),
+                    circles.maxCircles, circles.circleSearch);
+        }
+
+        TeamPropParameters.ColorChannelPixelCountParameters pixelCount = pTeamPropParameters.colorChannelPixelCountParameters;
+        TeamPropParameters.ColorChannelPixelCountParameters scaledPixelCount = null;
+        if (pixelCount != null)
+            scaledPixelCount = new TeamPropParameters.ColorChannelPixelCountParameters(
+                    pixelCount.redGrayParameters, scaleCount(pixelCount.redMinWhitePixelCount),
+                    pixelCount.blueGrayParameters, scaleCount(pixelCount.blueMinWhitePixelCount));
+
+        TeamPropParameters.BrightSpotParameters brightSpot = pTeamPropParameters.brightSpotParameters;
+        TeamPropParameters.BrightSpotParameters scaledBrightSpot = null;
+        if (brightSpot != null)
+            scaledBrightSpot = new TeamPropParameters.BrightSpotParameters(
+                    brightSpot.redGrayParameters, scaleKernel(brightSpot.redBlurKernel),
+                    brightSpot.blueGrayParameters, scaleKernel(brightSpot.blueBlurKernel), brightSpot.engine);
+
+        TeamPropParameters.GrayscalePixelCountParameters grayscalePixelCount = pTeamPropParameters.grayscalePixelCountParameters;
+        TeamPropParameters.GrayscalePixelCountParameters scaledGrayscalePixelCount = null;
+        if (grayscalePixelCount != null)
+            scaledGrayscalePixelCount = new TeamPropParameters.GrayscalePixelCountParameters(
+                    grayscalePixelCount.redGrayParameters, scaleCount(grayscalePixelCount.redMinWhitePixelCount),
+                    grayscalePixelCount.blueGrayParameters, scaleCount(grayscalePixelCount.blueMinWhitePixelCount));
+
+        return new TeamPropParameters(scaledCircles, scaledPixelCount, scaledBrightSpot, scaledGrayscalePixelCount);
+    }
+
+    // A radius of 0 means no limit to HoughCircles.
+    private int scaleRadius(int pRadius) {
+        return pRadius <= 0 ? pRadius : Math.max(1, (int) Math.round(pRadius * scale));
+    }
+
+    private int scaleCount(int pCount) {
+        return (int) Math.round(pCount * scale * scale);
+    }
+
+    private double scaleKernel(double pKernel) {
+        return scaledKernelSize(pKernel);
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import java.util.Locale;
+
+// The elapsed time between the stages of a single recognition, from
+// the capture of the image by the camera to the final decision. All
+// of the input times are in the System.nanoTime() timebase.
+public class RecognitionLatency {
+
+    public final double captureToHandoffMs;
+    public final double handoffToPreprocessMs;
+    public final double preprocessToDecisionMs;
+
+    public RecognitionLatency(long pCaptureTimeNanos, long pHandoffTimeNanos,
+                              long pPreprocessedTimeNanos, long pDecisionTimeNanos) {
+        captureToHandoffMs = (pHandoffTimeNanos - pCaptureTimeNanos) / 1_000_000.0;
+        handoffToPreprocessMs = (pPreprocessedTimeNanos - pHandoffTimeNanos) / 1_000_000.0;
+        preprocessToDecisionMs = (pDecisionTimeNanos - pPreprocessedTimeNanos) / 1_000_000.0;
+    }
+
+    public double totalMs() {
+        return captureToHandoffMs + handoffToPreprocessMs + preprocessToDecisionMs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "capture to handoff %.1f ms, handoff to preprocess %.1f ms, preprocess to decision %.1f ms, total %.1f ms",
+                captureToHandoffMs, handoffToPreprocessMs, preprocessToDecisionMs, totalMs());
+    }
+
+}
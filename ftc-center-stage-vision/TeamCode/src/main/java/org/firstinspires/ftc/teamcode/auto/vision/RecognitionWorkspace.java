@@ -0,0 +1,94 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.VisionParameters;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+// The intermediate images used during recognition, allocated once at
+// the size of the image ROI and reused for every recognition so that
+// native memory does not pile up waiting for finalizers. OpenCV only
+// reallocates an output Mat if its size or type does not match, so an
+// image of a different size still works but is not allocation-free.
+// A workspace may only be used by one thread at a time; call release()
+// when the OpMode is finished with it.
+public class RecognitionWorkspace {
+    private static final String TAG = RecognitionWorkspace.class.getSimpleName();
+
+    private static final int SMALL_MORPHOLOGY_KERNEL = 3;
+    private static final int LARGE_MORPHOLOGY_KERNEL = 5;
+
+    // Single channel, the size of the ROI.
+    public final Mat invertedChannel;
+    public final Mat gray;
+    public final Mat adjustedGray;
+    public final Mat blurred;
+    public final Mat thresholded;
+    public final Mat scratch;
+
+    // Integral image of the thresholded ROI for spike window scoring,
+    // one row and one column larger than the ROI.
+    public final Mat integral;
+
+    // The ROI downscaled for recognition; empty at full scale.
+    public final Mat scaledROI = new Mat();
+
+    // Three channels, the size of the ROI.
+    public final Mat hsv;
+    public final Mat drawing; // BGR output on which to draw results
+
+    // Output of HoughCircles; its size depends on the number of circles.
+    public final Mat circles = new Mat();
+
+    // A spike window at the coarse scale of the windowed circle search;
+    // its size depends on the window.
+    public final Mat coarseWindow = new Mat();
+
+    // Lookup table for the fused invert, median shift and threshold.
+    public final Mat lut = new Mat(1, 256, CvType.CV_8UC1);
+    public final byte[] lutValues = new byte[256];
+
+    // Sizes of the square morphology kernels, 3 and 5 at full scale,
+    // scaled with the ROI.
+    public final int smallMorphologyKernel;
+    public final int largeMorphologyKernel;
+
+    public RecognitionWorkspace(VisionParameters.ImageParameters pImageParameters) {
+        this(pImageParameters, new ProcessingScale(1.0));
+    }
+
+    // The intermediate images are allocated at the size of the ROI
+    // after downscaling.
+    public RecognitionWorkspace(VisionParameters.ImageParameters pImageParameters, ProcessingScale pProcessingScale) {
+        int rows = pProcessingScale.scaledLength(pImageParameters.image_roi.height);
+        int cols = pProcessingScale.scaledLength(pImageParameters.image_roi.width);
+        invertedChannel = new Mat(rows, cols, CvType.CV_8UC1);
+        gray = new Mat(rows, cols, CvType.CV_8UC1);
+        adjustedGray = new Mat(rows, cols, CvType.CV_8UC1);
+        blurred = new Mat(rows, cols, CvType.CV_8UC1);
+        thresholded = new Mat(rows, cols, CvType.CV_8UC1);
+        scratch = new Mat(rows, cols, CvType.CV_8UC1);
+        integral = new Mat(rows + 1, cols + 1, CvType.CV_32SC1);
+        hsv = new Mat(rows, cols, CvType.CV_8UC3);
+        drawing = new Mat(rows, cols, CvType.CV_8UC3);
+        smallMorphologyKernel = pProcessingScale.scaledKernelSize(SMALL_MORPHOLOGY_KERNEL);
+        largeMorphologyKernel = pProcessingScale.scaledKernelSize(LARGE_MORPHOLOGY_KERNEL);
+
+        for (Mat mat : allMats())
+            MatTracker.track(MatTracker.Stage.WORKSPACE, mat);
+        RobotLogCommon.d(TAG, "Allocated a recognition workspace for an ROI of width " + cols + ", height " + rows +
+                ", morphology kernels " + smallMorphologyKernel + " and " + largeMorphologyKernel);
+    }
+
+    public void release() {
+        for (Mat mat : allMats())
+            MatTracker.release(mat);
+        RobotLogCommon.d(TAG, "Released the recognition workspace");
+    }
+
+    private Mat[] allMats() {
+        return new Mat[]{invertedChannel, gray, adjustedGray, blurred, thresholded, scratch,
+                integral, scaledROI, hsv, drawing, circles, coarseWindow, lut};
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+// Decides cheaply whether an ROI differs from the last ROI that went
+// through full recognition so that the result of that recognition can
+// be reused while the scene is static, e.g. during init. Both ROIs are
+// shrunk by an INTER_AREA resize to a small grayscale thumbnail; the
+// scene has changed if more than a fraction of the thumbnail pixels
+// differ by more than a number of gray levels. Since the comparison is
+// always against the last recognized ROI, a slow drift still registers
+// once it has added up.
+// An instance may only be used by one thread at a time; call release()
+// when it is no longer needed.
+public class SceneChangeDetector {
+    private static final String TAG = SceneChangeDetector.class.getSimpleName();
+
+    public static final int DEFAULT_DOWNSAMPLE = 8;
+    public static final int DEFAULT_PIXEL_DELTA = 24;
+    public static final double DEFAULT_CHANGED_FRACTION = 0.01;
+
+    private final int downsample;
+    private final int pixelDelta;
+    private final double changedFraction;
+
+    private final Mat thumbnail = MatTracker.track(MatTracker.Stage.WORKSPACE, new Mat());
+    private final Mat gray = MatTracker.track(MatTracker.Stage.WORKSPACE, new Mat());
+    private final Mat reference = MatTracker.track(MatTracker.Stage.WORKSPACE, new Mat());
+    private final Mat difference = MatTracker.track(MatTracker.Stage.WORKSPACE, new Mat());
+    private boolean haveReference;
+    private TeamPropReturn lastReturn; // the result for the reference ROI, if any
+    private int unchangedCount;
+
+    public SceneChangeDetector() {
+        this(DEFAULT_DOWNSAMPLE, DEFAULT_PIXEL_DELTA, DEFAULT_CHANGED_FRACTION);
+    }
+
+    public SceneChangeDetector(int pDownsample, int pPixelDelta, double pChangedFraction) {
+        downsample = pDownsample;
+        pixelDelta = pPixelDelta;
+        changedFraction = pChangedFraction;
+    }
+
+    // Returns true if pImageROI, which may have 1, 3 or 4 channels,
+    // differs from the reference ROI or if there is no reference yet,
+    // in which case pImageROI becomes the reference and the recorded
+    // result is discarded.
+    public boolean hasChanged(Mat pImageROI) {
+        Imgproc.resize(pImageROI, thumbnail, new Size(Math.max(1, pImageROI.cols() / downsample),
+                Math.max(1, pImageROI.rows() / downsample)), 0, 0, Imgproc.INTER_AREA);
+        Mat current = thumbnail;
+        if (thumbnail.channels() == 3) {
+            Imgproc.cvtColor(thumbnail, gray, Imgproc.COLOR_BGR2GRAY);
+            current = gray;
+        } else if (thumbnail.channels() == 4) {
+            Imgproc.cvtColor(thumbnail, gray, Imgproc.COLOR_RGBA2GRAY);
+            current = gray;
+        }
+
+        if (haveReference && current.size().equals(reference.size())) {
+            Core.absdiff(current, reference, difference);
+            Imgproc.threshold(difference, difference, pixelDelta, 255, Imgproc.THRESH_BINARY);
+            if (Core.countNonZero(difference) <= changedFraction * difference.total()) {
+                unchangedCount++;
+                return false;
+            }
+        }
+
+        if (unchangedCount > 0)
+            RobotLogCommon.d(TAG, "Scene changed after " + unchangedCount + " unchanged frames");
+        current.copyTo(reference);
+        haveReference = true;
+        lastReturn = null;
+        unchangedCount = 0;
+        return true;
+    }
+
+    // The result of full recognition on the reference ROI; null if it
+    // has not been recorded.
+    public TeamPropReturn getLastReturn() {
+        return lastReturn;
+    }
+
+    public void setLastReturn(TeamPropReturn pTeamPropReturn) {
+        lastReturn = pTeamPropReturn;
+    }
+
+    // The next ROI is treated as changed, e.g. after the recognition
+    // parameters have changed.
+    public void reset() {
+        haveReference = false;
+        lastReturn = null;
+    }
+
+    public void release() {
+        MatTracker.release(thumbnail);
+        MatTracker.release(gray);
+        MatTracker.release(reference);
+        MatTracker.release(difference);
+    }
+
+}
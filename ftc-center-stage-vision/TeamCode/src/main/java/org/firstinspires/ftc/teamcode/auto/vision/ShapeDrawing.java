@@ -6,7 +6,6 @@ import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
 import java.util.List;
@@ -47,7 +46,7 @@ public class ShapeDrawing {
         Imgproc.line(pImageROI, xLowerLeft, xUpperRight, pBGRColor, drawnXThickness);
 
         if (pOutputFilenamePreamble != null && RobotLogCommon.isLoggable("v")) {
-            Imgcodecs.imwrite(pOutputFilenamePreamble + "NO_BRECT.png", pImageROI);
+            ImageFileWriter.write(pOutputFilenamePreamble + "NO_BRECT.png", pImageROI);
             RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "NO_BRECT.png");
         }
     }
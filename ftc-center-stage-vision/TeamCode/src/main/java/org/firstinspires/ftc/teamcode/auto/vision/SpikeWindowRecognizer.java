@@ -0,0 +1,110 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// Common state and helpers for the recognition paths that decide on
+// the location of the Team Prop from the spike windows in the ROI.
+public abstract class SpikeWindowRecognizer implements TeamPropRecognizer {
+
+    private static final String TAG = SpikeWindowRecognizer.class.getSimpleName();
+
+    protected final RobotConstants.Alliance alliance;
+    protected final SpikeWindowMapping spikeWindowMapping;
+    protected final EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> spikeWindows;
+    protected final RecognitionWorkspace workspace;
+    private final RobotConstantsCenterStage.TeamPropLocation nposLocation;
+
+    protected SpikeWindowRecognizer(RobotConstants.Alliance pAlliance, SpikeWindowMapping pSpikeWindowMapping,
+                                    RecognitionWorkspace pWorkspace) {
+        alliance = pAlliance;
+        spikeWindowMapping = pSpikeWindowMapping;
+        spikeWindows = pSpikeWindowMapping.spikeWindows;
+        workspace = pWorkspace;
+
+        if (!spikeWindows.containsKey(RobotConstantsCenterStage.SpikeLocationWindow.LEFT) ||
+                !spikeWindows.containsKey(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT))
+            throw new AutonomousRobotException(TAG, "spikeWindows must contain both LEFT and RIGHT");
+
+        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
+        if (nposWindow == null)
+            throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
+        nposLocation = nposWindow.second;
+    }
+
+    // Selects the RED or the BLUE value of a parameter once, when the
+    // recognizer is created, instead of on every frame.
+    protected static <T> T forAlliance(RobotConstants.Alliance pAlliance, T pRedValue, T pBlueValue) {
+        switch (pAlliance) {
+            case RED: return pRedValue;
+            case BLUE: return pBlueValue;
+            default: throw new AutonomousRobotException(TAG, "The recognition path requires an alliance selection");
+        }
+    }
+
+    // The Team Prop is assumed to be in the spike window that is not
+    // visible. Draws the spike windows on pPropOut, which may be null.
+    protected TeamPropReturn nposReturn(RobotConstants.RecognitionResults pRecognitionResults, String pReason,
+                                        Mat pPropOut, String pOutputFilenamePreamble) {
+        RobotLogCommon.d(TAG, pReason + "; Team Prop location assumed as " + nposLocation);
+        if (pPropOut != null)
+            SpikeWindowUtils.drawSpikeWindows(pPropOut, spikeWindows, pOutputFilenamePreamble);
+        return new TeamPropReturn(pRecognitionResults, nposLocation);
+    }
+
+    // Look through the visible spike windows and determine which one,
+    // if any, contains the team prop. Also draw the boundaries of the
+    // windows on pPropOut, which may be null.
+    protected TeamPropReturn lookThroughWindows(Mat pPropOut, Point pCenterOfObject, String pOutputFilenamePreamble) {
+        RobotConstantsCenterStage.TeamPropLocation foundLocation = null;
+        for (Map.Entry<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> entry : spikeWindows.entrySet()) {
+            if (entry.getKey() == RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS)
+                continue;
+
+            Rect window = entry.getValue().first;
+            if (pCenterOfObject.x >= window.x && pCenterOfObject.x < window.x + window.width) {
+                RobotLogCommon.d(TAG, "Success: Team Prop found in the " + entry.getKey() + " spike window: location " + entry.getValue().second);
+                foundLocation = entry.getValue().second;
+                break;
+            }
+        }
+
+        if (foundLocation == null) {
+            RobotLogCommon.d(TAG, "Team Prop not found in any visible spike window: assuming location " + nposLocation);
+            foundLocation = nposLocation;
+        }
+
+        // Draw the spike windows on the ROI with the circles.
+        if (pPropOut != null)
+            SpikeWindowUtils.drawSpikeWindows(pPropOut, spikeWindows, pOutputFilenamePreamble);
+
+        return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, foundLocation);
+    }
+
+    // The output images on which we draw must be in color even if
+    // the image source only delivered a single channel. The returned
+    // image is workspace.drawing or, if no image files are to be
+    // written, null so that the copy and the drawing are skipped.
+    protected Mat colorImageForOutput(Mat pImageROI, String pOutputFilenamePreamble) {
+        if (pOutputFilenamePreamble == null)
+            return null;
+
+        if (pImageROI.channels() != 1)
+            pImageROI.copyTo(workspace.drawing);
+        else
+            Imgproc.cvtColor(pImageROI, workspace.drawing, Imgproc.COLOR_GRAY2BGR);
+        return workspace.drawing;
+    }
+
+}
@@ -0,0 +1,121 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// White pixel counts for the spike windows of a thresholded ROI from
+// a single integral image. Once the integral image has been built the
+// count for any rectangle takes four lookups, so the cost of scoring
+// does not depend on the number or the size of the windows or on how
+// finely each window is divided into a grid of cells.
+// An instance may only be used by one thread at a time.
+public class SpikeWindowScoring {
+    private static final String TAG = SpikeWindowScoring.class.getSimpleName();
+
+    private final Mat integral; // from the workspace
+    private int[] sums = new int[0];
+    private int stride; // the width of the integral image
+    private int imageRows;
+    private int imageCols;
+
+    public SpikeWindowScoring(RecognitionWorkspace pWorkspace) {
+        integral = pWorkspace.integral;
+    }
+
+    public static class WindowScore {
+        public final Rect window;
+        public final RobotConstantsCenterStage.TeamPropLocation propLocation;
+        public final int whitePixelCount;
+        public final Rect bestCell; // the grid cell with the most white pixels
+        public final int bestCellWhitePixelCount;
+
+        public WindowScore(Rect pWindow, RobotConstantsCenterStage.TeamPropLocation pPropLocation,
+                           int pWhitePixelCount, Rect pBestCell, int pBestCellWhitePixelCount) {
+            window = pWindow;
+            propLocation = pPropLocation;
+            whitePixelCount = pWhitePixelCount;
+            bestCell = pBestCell;
+            bestCellWhitePixelCount = pBestCellWhitePixelCount;
+        }
+    }
+
+    // Build the integral image of a binary (0 or 255) single-channel
+    // image. Must be called before any of the counts below.
+    public void computeIntegral(Mat pThresholded) {
+        if (pThresholded.type() != CvType.CV_8UC1)
+            throw new AutonomousRobotException(TAG, "Expected a single-channel 8-bit image");
+
+        // The integral image has one more row and one more column than
+        // the image; the sum over 255 * 640 * 480 still fits in an int.
+        Imgproc.integral(pThresholded, integral, CvType.CV_32S);
+        imageRows = pThresholded.rows();
+        imageCols = pThresholded.cols();
+        stride = imageCols + 1;
+        int size = (imageRows + 1) * stride;
+        if (sums.length != size)
+            sums = new int[size];
+        integral.get(0, 0, sums);
+    }
+
+    // The number of white pixels in the rectangle, which is clipped to
+    // the image.
+    public int countWhite(Rect pRect) {
+        int x1 = Math.max(0, pRect.x);
+        int y1 = Math.max(0, pRect.y);
+        int x2 = Math.min(imageCols, pRect.x + pRect.width);
+        int y2 = Math.min(imageRows, pRect.y + pRect.height);
+        if (x2 <= x1 || y2 <= y1)
+            return 0;
+
+        int sum = sums[y2 * stride + x2] - sums[y1 * stride + x2] - sums[y2 * stride + x1] + sums[y1 * stride + x1];
+        return sum / 255;
+    }
+
+    // Score all of the visible spike windows, i.e. all but WINDOW_NPOS,
+    // in the order of the SpikeLocationWindow enum. Each window is also
+    // divided into the grid of cells from the spike window mapping and
+    // the cell with the most white pixels is reported.
+    public EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, WindowScore> scoreWindows(
+            EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> pSpikeWindows,
+            SpikeWindowMapping.WindowGrid pWindowGrid) {
+        EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, WindowScore> scores =
+                new EnumMap<>(RobotConstantsCenterStage.SpikeLocationWindow.class);
+        for (Map.Entry<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> entry : pSpikeWindows.entrySet()) {
+            if (entry.getKey() == RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS)
+                continue;
+
+            Rect window = entry.getValue().first;
+            Rect bestCell = window;
+            int bestCellCount = -1;
+            for (int row = 0; row < pWindowGrid.rows; row++) {
+                int cellY = window.y + (row * window.height) / pWindowGrid.rows;
+                int cellHeight = window.y + ((row + 1) * window.height) / pWindowGrid.rows - cellY;
+                for (int column = 0; column < pWindowGrid.columns; column++) {
+                    int cellX = window.x + (column * window.width) / pWindowGrid.columns;
+                    int cellWidth = window.x + ((column + 1) * window.width) / pWindowGrid.columns - cellX;
+                    Rect cell = new Rect(cellX, cellY, cellWidth, cellHeight);
+                    int cellCount = countWhite(cell);
+                    if (cellCount > bestCellCount) {
+                        bestCellCount = cellCount;
+                        bestCell = cell;
+                    }
+                }
+            }
+
+            scores.put(entry.getKey(), new WindowScore(window, entry.getValue().second,
+                    countWhite(window), bestCell, bestCellCount));
+        }
+
+        return scores;
+    }
+
+}
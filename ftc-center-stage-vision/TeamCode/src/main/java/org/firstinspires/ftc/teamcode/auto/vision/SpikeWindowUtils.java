@@ -8,16 +8,16 @@ import org.firstinspires.ftc.teamcode.common.RobotConstants;
 import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
 import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
 import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.robot.device.camera.FrameInfo;
 import org.firstinspires.ftc.teamcode.robot.device.camera.ImageProvider;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.Date;
 import java.util.EnumMap;
+import java.util.Map;
 
 public class SpikeWindowUtils {
 
@@ -37,47 +37,50 @@ public class SpikeWindowUtils {
         RobotLogCommon.d(TAG, "In " + TAG + ". showSpikeWindowLayout");
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
-        Pair<Mat, Date> teamPropImage = pImageProvider.getImage();
+        Pair<Mat, FrameInfo> teamPropImage = pImageProvider.getImage();
         if (teamPropImage == null)
             return null; // don't crash
 
         // The image is in BGR order (OpenCV imread from a file).
-        String fileDate = TimeStamp.getDateTimeStamp(teamPropImage.second);
-        String outputFilenamePreamble = ImageUtils.createOutputFilePreamble(pImageFilename, imageDirectory, fileDate);
-        Mat imageROI = ImageUtils.preProcessImage(teamPropImage.first, outputFilenamePreamble, pSpikeWindowMapping.imageParameters);
-        drawSpikeWindows(imageROI, pSpikeWindowMapping.spikeWindows, outputFilenamePreamble);
-        return imageROI;
+        // Copy the ROI because the image itself may belong to a
+        // pool of frames owned by the ImageProvider.
+        try {
+            String fileDate = TimeStamp.getDateTimeStamp(teamPropImage.second.timestamp);
+            String outputFilenamePreamble = ImageUtils.createOutputFilePreamble(pImageFilename, imageDirectory, fileDate);
+            Mat imageROI = ImageUtils.preProcessImage(teamPropImage.first, outputFilenamePreamble, pSpikeWindowMapping.imageParameters).clone();
+            drawSpikeWindows(imageROI, pSpikeWindowMapping.spikeWindows, outputFilenamePreamble);
+            return imageROI;
+        } finally {
+            pImageProvider.releaseImage();
+        }
     }
 
     public static void drawSpikeWindows(Mat pPropOut,
                                   EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> pSpikeWindows,
                                   String pOutputFilenamePreamble) {
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> leftWindow = pSpikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.LEFT);
-        if (leftWindow == null)
+        if (!pSpikeWindows.containsKey(RobotConstantsCenterStage.SpikeLocationWindow.LEFT))
             throw new AutonomousRobotException(TAG, "pSpikeWindows key for LEFT is null");
 
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> rightWindow = pSpikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT);
-        if (rightWindow == null)
+        if (!pSpikeWindows.containsKey(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT))
             throw new AutonomousRobotException(TAG, "pSpikeWindows key for RIGHT is null");
 
-        // Draw the spike windows on the ROI
+        // Draw the visible spike windows on the ROI
         // so that we can see their placement during debugging.
         // params Mat, Point upperLeft, Point lowerRight, Scalar color, int thickness
-        Point leftWindowUpperLeft = new Point(leftWindow.first.x, leftWindow.first.y);
-        Point leftWindowLowerRight = new Point(leftWindow.first.x + leftWindow.first.width,
-                leftWindow.first.y + leftWindow.first.height);
-
-        Point rightWindowUpperLeft = new Point(rightWindow.first.x, rightWindow.first.y);
-        Point rightWindowLowerRight = new Point(rightWindow.first.x + rightWindow.first.width,
-                rightWindow.first.y + rightWindow.first.height);
-
-        Imgproc.rectangle(pPropOut, leftWindowUpperLeft, leftWindowLowerRight, new Scalar(0, 255, 0), 3);
-        Imgproc.rectangle(pPropOut, rightWindowUpperLeft, rightWindowLowerRight, new Scalar(0, 255, 0), 3);
+        for (Map.Entry<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> entry : pSpikeWindows.entrySet()) {
+            if (entry.getKey() == RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS)
+                continue;
+
+            Rect window = entry.getValue().first;
+            Point windowUpperLeft = new Point(window.x, window.y);
+            Point windowLowerRight = new Point(window.x + window.width, window.y + window.height);
+            Imgproc.rectangle(pPropOut, windowUpperLeft, windowLowerRight, new Scalar(0, 255, 0), 3);
+        }
 
         if (pOutputFilenamePreamble != null) {
             String teamPropFilename = pOutputFilenamePreamble + "_SPIKE.png";
             RobotLogCommon.d(TAG, "Writing " + teamPropFilename);
-            Imgcodecs.imwrite(teamPropFilename, pPropOut);
+            ImageFileWriter.writeDecision(teamPropFilename, pPropOut);
         }
     }
 
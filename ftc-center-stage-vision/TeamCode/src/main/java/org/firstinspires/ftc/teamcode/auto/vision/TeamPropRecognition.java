@@ -7,6 +7,7 @@ import org.firstinspires.ftc.ftcdevcommon.platform.android.WorkingDirectory;
 import org.firstinspires.ftc.teamcode.common.RobotConstants;
 import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
 import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.robot.device.camera.FrameInfo;
 import org.firstinspires.ftc.teamcode.robot.device.camera.ImageProvider;
 import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
 import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
@@ -14,17 +15,12 @@ import org.firstinspires.ftc.teamcode.xml.VisionParameters;
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public class TeamPropRecognition {
 
@@ -32,11 +28,27 @@ public class TeamPropRecognition {
 
     private final String workingDirectory;
     private final RobotConstants.Alliance alliance;
-    private EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> spikeWindows;
+    private final boolean writeImageFiles;
+    private final RecognitionWorkspace workspace;
+    private final EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, TeamPropRecognizer> recognizers =
+            new EnumMap<>(RobotConstantsCenterStage.TeamPropRecognitionPath.class);
+    private TeamPropParameters recognizerTeamPropParameters;
+    private SpikeWindowMapping recognizerSpikeWindowMapping;
+    private ProcessingScale processingScale = new ProcessingScale(1.0);
+
+    // The caller owns the workspace and must release it when it is
+    // finished with recognition.
+    public TeamPropRecognition(RobotConstants.Alliance pAlliance, RecognitionWorkspace pWorkspace) {
+        this(pAlliance, true, pWorkspace);
+    }
 
-    public TeamPropRecognition(RobotConstants.Alliance pAlliance) {
+    // Recognition that runs repeatedly, e.g. in the background during
+    // init, should not fill up the image directory.
+    public TeamPropRecognition(RobotConstants.Alliance pAlliance, boolean pWriteImageFiles, RecognitionWorkspace pWorkspace) {
         workingDirectory = WorkingDirectory.getWorkingDirectory() + RobotConstants.IMAGE_DIR;
         alliance = pAlliance;
+        writeImageFiles = pWriteImageFiles;
+        workspace = pWorkspace;
     }
 
     // Returns the result of image analysis.
@@ -44,449 +56,301 @@ public class TeamPropRecognition {
                                             RobotConstantsCenterStage.TeamPropRecognitionPath pTeamPropRecognitionPath,
                                             TeamPropParameters pTeamPropParameters,
                                             SpikeWindowMapping pSpikeWindowMapping) throws InterruptedException {
+        return recognizeTeamProp(pImageProvider, pTeamPropRecognitionPath, pTeamPropParameters, pSpikeWindowMapping, null);
+    }
+
+    // If pSceneChangeDetector is not null and the ROI has not changed
+    // since the last recognition recorded in it, that result is returned
+    // with the FrameInfo and latency of the current image.
+    public TeamPropReturn recognizeTeamProp(ImageProvider pImageProvider,
+                                            RobotConstantsCenterStage.TeamPropRecognitionPath pTeamPropRecognitionPath,
+                                            TeamPropParameters pTeamPropParameters,
+                                            SpikeWindowMapping pSpikeWindowMapping,
+                                            SceneChangeDetector pSceneChangeDetector) throws InterruptedException {
         RobotLogCommon.d(TAG, "In TeamPropRecognition.recognizeTeamProp");
 
-        spikeWindows = pSpikeWindowMapping.spikeWindows;
+        TeamPropRecognizer recognizer = recognizerFor(pTeamPropRecognitionPath, pTeamPropParameters, pSpikeWindowMapping);
 
         // LocalDateTime requires Android minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
-        Pair<Mat, Date> teamPropImage = pImageProvider.getImage();
+        Pair<Mat, FrameInfo> teamPropImage = pImageProvider.getImage();
         if (teamPropImage == null)
             return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_INTERNAL_ERROR); // don't crash
 
-        // The image is in BGR order.
-        String fileDate = TimeStamp.getDateTimeStamp(teamPropImage.second);
-        String outputFilenamePreamble = ImageUtils.createOutputFilePreamble(pSpikeWindowMapping.imageParameters.image_source, workingDirectory, fileDate);
-        Mat imageROI = ImageUtils.preProcessImage(teamPropImage.first, outputFilenamePreamble, pSpikeWindowMapping.imageParameters);
-
-        RobotLogCommon.d(TAG, "Recognition path " + pTeamPropRecognitionPath);
-        switch (pTeamPropRecognitionPath) {
-            case COLOR_CHANNEL_CIRCLES: {
-                return colorChannelCirclesPath(imageROI, outputFilenamePreamble, pTeamPropParameters.colorChannelCirclesParameters);
+        // The image is in BGR order or, for the color channel pixel count
+        // and bright spot paths, may be the inverted color channel for the
+        // alliance. It may belong to a pool of frames owned by the
+        // ImageProvider so make sure to hand it back when recognition is
+        // complete.
+        FrameInfo frameInfo = teamPropImage.second;
+        Mat imageROI = null;
+        ImageFileWriter.ArtifactSession artifactSession = null;
+        boolean failed = true;
+        try {
+            String outputFilenamePreamble = null; // no image files, no drawing
+            if (writeImageFiles && pSpikeWindowMapping.artifactLevel != RobotConstantsCenterStage.ArtifactLevel.NONE) {
+                String fileDate = TimeStamp.getDateTimeStamp(frameInfo.timestamp);
+                outputFilenamePreamble = ImageUtils.createOutputFilePreamble(pSpikeWindowMapping.imageParameters.image_source, workingDirectory, fileDate);
+                artifactSession = ImageFileWriter.beginSession(pSpikeWindowMapping.artifactLevel);
             }
 
-            //## Not supported in Android.
-            //case COLOR_CHANNEL_FEATURES: {
-            //case COLOR_CHANNEL_CONTOURS: {
-
-            case COLOR_CHANNEL_PIXEL_COUNT: {
-                return colorChannelPixelCountPath(imageROI, outputFilenamePreamble, pTeamPropParameters.colorChannelPixelCountParameters);
+            imageROI = ImageUtils.preProcessImage(teamPropImage.first, outputFilenamePreamble, pSpikeWindowMapping.imageParameters);
+            if (pSceneChangeDetector != null && !pSceneChangeDetector.hasChanged(imageROI) &&
+                    pSceneChangeDetector.getLastReturn() != null) {
+                TeamPropReturn lastReturn = pSceneChangeDetector.getLastReturn();
+                failed = lastReturn.recognitionResults != RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
+                long nowNanos = System.nanoTime();
+                RobotLogCommon.d(TAG, "Scene unchanged; reusing " + lastReturn.recognitionResults + " " + lastReturn.teamPropLocation);
+                return new TeamPropReturn(lastReturn, frameInfo,
+                        new RecognitionLatency(frameInfo.captureTimeNanos, frameInfo.handoffTimeNanos, nowNanos, nowNanos));
             }
 
-            //## Share code with COLOR_CHANNEL_PIXEL_COUNT but start with
-            // a grayscale image, e.g. one from an ArduCam OV9281.
-            // case GRAYSCALE_PIXEL_COUNT
-
-            case COLOR_CHANNEL_BRIGHT_SPOT: {
-                return colorChannelBrightSpotPath(imageROI, outputFilenamePreamble, pTeamPropParameters.brightSpotParameters);
-            }
-            case GRAYSCALE_BRIGHT_SPOT: {
-                return grayscaleBrightSpotPath(imageROI, outputFilenamePreamble, pTeamPropParameters.brightSpotParameters);
-            }
-            default:
-                throw new AutonomousRobotException(TAG, "Unrecognized recognition path");
+            Mat recognitionROI = processingScale.downscale(imageROI, workspace.scaledROI);
+            long preprocessedTimeNanos = System.nanoTime();
+
+            RobotLogCommon.d(TAG, "Recognition path " + pTeamPropRecognitionPath);
+            if (recognitionROI.channels() == 1 && !recognizer.acceptsSingleChannel())
+                throw new AutonomousRobotException(TAG, "Recognition path " + pTeamPropRecognitionPath + " requires a BGR image");
+
+            TeamPropReturn pathReturn = recognizer.recognize(recognitionROI, outputFilenamePreamble);
+            failed = pathReturn.recognitionResults != RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL;
+            if (pSceneChangeDetector != null)
+                pSceneChangeDetector.setLastReturn(pathReturn);
+
+            RecognitionLatency latency = new RecognitionLatency(frameInfo.captureTimeNanos, frameInfo.handoffTimeNanos,
+                    preprocessedTimeNanos, System.nanoTime());
+            RobotLogCommon.d(TAG, "Latency for " + frameInfo + ": " + latency);
+            return new TeamPropReturn(pathReturn, frameInfo, latency);
+        } finally {
+            if (artifactSession != null)
+                ImageFileWriter.endSession(artifactSession, failed);
+
+            // The ROI is only a header on the image, not a copy.
+            if (imageROI != null && imageROI != teamPropImage.first)
+                MatTracker.release(imageROI);
+            pImageProvider.releaseImage();
         }
     }
 
-    private TeamPropReturn colorChannelCirclesPath(Mat pImageROI, String pOutputFilenamePreamble,
-                                                   TeamPropParameters.ColorChannelCirclesParameters pColorChannelCirclesParameters) {
-        Mat split = splitAndInvertChannels(pImageROI, alliance, pColorChannelCirclesParameters.grayParameters, pOutputFilenamePreamble);
-
-        // Sharpening the image does not improve the results.
-        // Apply a 2d filter to sharpen the image.
-        //Mat sharp = sharpen(split, pOutputFilenamePreamble);
-
-        // Remove noise by Gaussian blurring.
-        Imgproc.GaussianBlur(split, split, new Size(5, 5), 0);
-
-        // Support both full and partial circles depending upon the ROI
-        // and the parameters in the XML file.
-        // See https://stackoverflow.com/questions/20698613/detect-semicircle-in-opencv
-        // dp = 1, minDist = 60, param1 = 200, param2 = 20, 0, 0);
-        // Perform HoughCircles recognition
-        Mat circles = new Mat();
-        Imgproc.HoughCircles(split, circles, Imgproc.HOUGH_GRADIENT,
-                pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.dp,
-                pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.minDist,
-                pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.param1,
-                pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.param2,
-                pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.minRadius,
-                pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.maxRadius);
-
-        RobotLogCommon.d(TAG, "Number of circles " + circles.cols());
-
-        // If no circles were found then assume that the prop is outside
-        // of the ROI; use the NPOS position.
-        Mat propOut = pImageROI.clone();
-        if (circles.cols() == 0) {
-            Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-            if (nposWindow == null)
-                throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
-
-            RobotLogCommon.d(TAG, "No circles found; Team Prop location assumed as " + nposWindow.second);
-            SpikeWindowUtils.drawSpikeWindows(propOut, spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, nposWindow.second);
-        }
-
-        int numberOfTeamPropsFound = 0;
-        int largestRadius = -1;
-        Point centerOfLargestCircle = null;
-        for (int x = 0; x < circles.cols(); x++) {
-            double[] c = circles.get(0, x);
-            Point center = new Point(Math.round(c[0]), Math.round(c[1]));
-            int radius = (int) Math.round(c[2]);
-
-            RobotLogCommon.d(TAG, "Found a circle with center at x " + center.x + ", y " + center.y + ", radius " + radius);
-
-            // Always draw a circle outline around the contour.
-            Imgproc.circle(propOut, center, radius, new Scalar(255, 0, 255), 3, 8, 0);
-
-            // Apply the filters.
-            // Test for minimum radius, maximum radius.
-            if (radius < pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.minRadius) {
-                // Circle is too small.
-                RobotLogCommon.d(TAG, "False positive: circle too small, radius: " + radius);
+    // Run the recognition path over consecutive frames until the results
+    // from frames_to_agree frames agree on the location of the Team Prop
+    // or the time budget runs out, in which case the location with the
+    // most votes wins. The time budget is checked between frames so the
+    // total time may exceed it by the time it takes to analyze one frame.
+    public TeamPropReturn recognizeTeamPropConsensus(ImageProvider pImageProvider,
+                                                     RobotConstantsCenterStage.TeamPropRecognitionPath pTeamPropRecognitionPath,
+                                                     TeamPropParameters pTeamPropParameters,
+                                                     SpikeWindowMapping pSpikeWindowMapping) throws InterruptedException {
+        SpikeWindowMapping.ConsensusParameters consensusParameters =
+                Objects.requireNonNull(pSpikeWindowMapping.consensusParameters, TAG + " No consensus parameters for recognition");
+
+        EnumMap<RobotConstantsCenterStage.TeamPropLocation, Integer> votes =
+                new EnumMap<>(RobotConstantsCenterStage.TeamPropLocation.class);
+        EnumMap<RobotConstantsCenterStage.TeamPropLocation, TeamPropReturn> latestReturns =
+                new EnumMap<>(RobotConstantsCenterStage.TeamPropLocation.class);
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(consensusParameters.time_budget_ms);
+        int frameCount = 0;
+        do {
+            TeamPropReturn frameReturn = recognizeTeamProp(pImageProvider, pTeamPropRecognitionPath, pTeamPropParameters, pSpikeWindowMapping);
+            frameCount++;
+            if (frameReturn.recognitionResults != RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL)
                 continue;
-            }
 
-            if (radius > pColorChannelCirclesParameters.houghCirclesFunctionCallParameters.maxRadius) {
-                // Circle is too large.
-                RobotLogCommon.d(TAG, "False positive: circle too large, radius: " + radius);
-                continue;
-            }
-
-            // Passed all filters. Found a circle that might be a team prop.
-            numberOfTeamPropsFound++;
-            RobotLogCommon.d(TAG, "Found a candidate for a team prop, radius " + radius);
-            if (radius > largestRadius) {
-                largestRadius = radius;
-                centerOfLargestCircle = center;
+            int locationVotes = votes.merge(frameReturn.teamPropLocation, 1, Integer::sum);
+            latestReturns.put(frameReturn.teamPropLocation, frameReturn);
+            if (locationVotes >= consensusParameters.frames_to_agree) {
+                RobotLogCommon.d(TAG, "Consensus on " + frameReturn.teamPropLocation + " after " + frameCount + " frames; votes " + votes);
+                return new TeamPropReturn(frameReturn, votes);
             }
-        }
-
-        // We found at least one circle - but make sure that we've
-        // also passed all of the filters.
-        if (numberOfTeamPropsFound == 0) {
-            Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-            if (nposWindow == null)
-                throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
+        } while (System.nanoTime() < deadlineNanos);
 
-            RobotLogCommon.d(TAG, "No circles passed the filters; Team Prop location assumed as " + nposWindow.second);
-            SpikeWindowUtils.drawSpikeWindows(propOut, spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, nposWindow.second);
+        if (votes.isEmpty()) {
+            RobotLogCommon.d(TAG, "No successful recognition in " + frameCount + " frames");
+            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL);
         }
 
-        // Draw a black circle at the center of the largest circle.
-        Imgproc.circle(propOut, Objects.requireNonNull(centerOfLargestCircle,
-                TAG + " colorChannelCirclesPath: centerOfLargestCircle is null"),
-                10, new Scalar(0, 0, 0), 4);
-
-        String teamPropFilename = pOutputFilenamePreamble + "_CIR.png";
-        RobotLogCommon.d(TAG, "Writing " + teamPropFilename);
-        Imgcodecs.imwrite(teamPropFilename, propOut);
-        RobotLogCommon.d(TAG, "Number of candidate team props found: " + numberOfTeamPropsFound);
-
-        if (numberOfTeamPropsFound > pColorChannelCirclesParameters.maxCircles) {
-            Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-            if (nposWindow == null)
-                throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
-
-            RobotLogCommon.d(TAG, "Number of circles (" + numberOfTeamPropsFound + ") " +
-                    "exceeds the maximum of " + pColorChannelCirclesParameters.maxCircles);
-            SpikeWindowUtils.drawSpikeWindows(propOut, spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_UNSUCCESSFUL, nposWindow.second);
+        RobotConstantsCenterStage.TeamPropLocation plurality = null;
+        for (Map.Entry<RobotConstantsCenterStage.TeamPropLocation, Integer> vote : votes.entrySet()) {
+            if (plurality == null || vote.getValue() > votes.get(plurality))
+                plurality = vote.getKey();
         }
 
-        return lookThroughWindows(propOut, centerOfLargestCircle, pOutputFilenamePreamble);
+        RobotLogCommon.d(TAG, "Time budget expired after " + frameCount + " frames without consensus; votes " + votes +
+                ", going with " + plurality);
+        return new TeamPropReturn(latestReturns.get(plurality), votes);
     }
 
-    private TeamPropReturn colorChannelPixelCountPath(Mat pImageROI, String pOutputFilenamePreamble, TeamPropParameters.ColorChannelPixelCountParameters pColorChannelPixelCountParameters) {
-        // Use the grayscale and pixel count criteria parameters for the current alliance.
-        VisionParameters.GrayParameters allianceGrayParameters;
-        int allianceMinWhitePixelCount;
-        switch (alliance) {
-            case RED: {
-                allianceGrayParameters = pColorChannelPixelCountParameters.redGrayParameters;
-                allianceMinWhitePixelCount = pColorChannelPixelCountParameters.redMinWhitePixelCount;
-                break;
-            }
-            case BLUE: {
-                allianceGrayParameters = pColorChannelPixelCountParameters.blueGrayParameters;
-                allianceMinWhitePixelCount = pColorChannelPixelCountParameters.blueMinWhitePixelCount;
-                break;
-            }
-            default:
-                throw new AutonomousRobotException(TAG, "colorChannelPixelCountPath requires an alliance selection");
-        }
-
-        // Threshold the image: set pixels over the threshold value to white.
-        Mat split = splitAndInvertChannels(pImageROI, alliance, allianceGrayParameters, pOutputFilenamePreamble);
-        Mat thresholded = new Mat(); // output binary image
-        Imgproc.threshold(split, thresholded,
-                Math.abs(allianceGrayParameters.threshold_low),    // threshold value
-                255,   // white
-                allianceGrayParameters.threshold_low >= 0 ? Imgproc.THRESH_BINARY : Imgproc.THRESH_BINARY_INV); // thresholding type
-        RobotLogCommon.d(TAG, "Threshold values: low " + allianceGrayParameters.threshold_low + ", high 255");
-
-        String thrFilename = pOutputFilenamePreamble + "_THR.png";
-        Imgcodecs.imwrite(thrFilename, thresholded);
-        RobotLogCommon.d(TAG, "Writing " + thrFilename);
-
-        // Get the white pixel count for both the left and right
-        // spike windows.
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> leftSpikeWindow =
-                spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.LEFT);
-        if (leftSpikeWindow == null)
-            throw new AutonomousRobotException(TAG, "spikeWindows key for LEFT is null");
-
-        Mat leftSpikeWindowBoundary = thresholded.submat(leftSpikeWindow.first);
-        int leftNonZeroCount = Core.countNonZero(leftSpikeWindowBoundary);
-        RobotLogCommon.d(TAG, "Left spike window white pixel count " + leftNonZeroCount);
-
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> rightSpikeWindow =
-                spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT);
-        if (rightSpikeWindow == null)
-            throw new AutonomousRobotException(TAG, "spikeWindows key for RIGHT is null");
-
-        Mat rightSpikeWindowBoundary = thresholded.submat(rightSpikeWindow.first);
-        int rightNonZeroCount = Core.countNonZero(rightSpikeWindowBoundary);
-        RobotLogCommon.d(TAG, "Right spike window white pixel count " + rightNonZeroCount);
-
-        // If both counts are less than the minimum then we infer that
-        // the Team Prop is in the third (non-visible) spike window.
-        if (leftNonZeroCount < allianceMinWhitePixelCount &&
-                rightNonZeroCount < allianceMinWhitePixelCount) {
-            Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-            if (nposWindow == null)
-                throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
-
-            RobotLogCommon.d(TAG, "White pixel counts for the left and right spike windows were under the threshold");
-            SpikeWindowUtils.drawSpikeWindows(pImageROI.clone(), spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, nposWindow.second);
-        }
-
-        // Compare the white pixel count in the left and right spike
-        // windows against each other.
-        Mat pixelCountOut = pImageROI.clone();
-        if (leftNonZeroCount >= rightNonZeroCount) {
-            Point leftSpikeWindowCentroid = new Point((leftSpikeWindow.first.x + leftSpikeWindow.first.width) / 2.0,
-                    (leftSpikeWindow.first.y + leftSpikeWindow.first.height) / 2.0);
-            RobotLogCommon.d(TAG, "Center of left spike window " + leftSpikeWindowCentroid);
-
-            Imgproc.circle(pixelCountOut, leftSpikeWindowCentroid, 10, new Scalar(0, 255, 0));
-            SpikeWindowUtils.drawSpikeWindows(pixelCountOut, spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, leftSpikeWindow.second);
-        }
-
-        // Go with the right spike window.
-        Point rightSpikeWindowCentroid = new Point(rightSpikeWindow.first.x + (rightSpikeWindow.first.width / 2.0),
-                (rightSpikeWindow.first.y + rightSpikeWindow.first.height) / 2.0);
-        RobotLogCommon.d(TAG, "Center of right spike window " + rightSpikeWindowCentroid);
-
-        Imgproc.circle(pixelCountOut, rightSpikeWindowCentroid, 10, new Scalar(0, 255, 0));
-        SpikeWindowUtils.drawSpikeWindows(pixelCountOut, spikeWindows, pOutputFilenamePreamble);
-        return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, rightSpikeWindow.second);
+    // Whether the recognition path can work from the inverted color
+    // channel for the alliance alone, in which case the image source
+    // need only deliver that channel. Creates the recognizer for the
+    // path if it does not exist yet.
+    public boolean acceptsSingleChannel(RobotConstantsCenterStage.TeamPropRecognitionPath pTeamPropRecognitionPath,
+                                        TeamPropParameters pTeamPropParameters,
+                                        SpikeWindowMapping pSpikeWindowMapping) {
+        return recognizerFor(pTeamPropRecognitionPath, pTeamPropParameters, pSpikeWindowMapping).acceptsSingleChannel();
     }
 
-    private TeamPropReturn colorChannelBrightSpotPath(Mat pImageROI, String pOutputFilenamePreamble,
-                                                      TeamPropParameters.BrightSpotParameters pBrightSpotParameters) {
-        // Use the grayscale and pixel count criteria parameters for the current alliance.
-        VisionParameters.GrayParameters allianceGrayParameters;
-        double allianceBlurKernel;
-        switch (alliance) {
-            case RED: {
-                allianceGrayParameters = pBrightSpotParameters.redGrayParameters;
-                allianceBlurKernel = pBrightSpotParameters.redBlurKernel;
-                break;
-            }
-            case BLUE: {
-                allianceGrayParameters = pBrightSpotParameters.blueGrayParameters;
-                allianceBlurKernel = pBrightSpotParameters.blueBlurKernel;
-                break;
-            }
-            default:
-                throw new AutonomousRobotException(TAG, "colorChannelBrightSpotPath requires an alliance selection");
+    // Recognizers are created on first use and kept for the life of
+    // this object as long as the parameters do not change.
+    private TeamPropRecognizer recognizerFor(RobotConstantsCenterStage.TeamPropRecognitionPath pTeamPropRecognitionPath,
+                                             TeamPropParameters pTeamPropParameters,
+                                             SpikeWindowMapping pSpikeWindowMapping) {
+        if (pTeamPropParameters != recognizerTeamPropParameters || pSpikeWindowMapping != recognizerSpikeWindowMapping) {
+            recognizers.clear();
+            recognizerTeamPropParameters = pTeamPropParameters;
+            recognizerSpikeWindowMapping = pSpikeWindowMapping;
+            processingScale = new ProcessingScale(pSpikeWindowMapping.processingScale);
+            if (!processingScale.isFullScale())
+                RobotLogCommon.d(TAG, "Recognition at a scale of " + processingScale.scale);
         }
 
-        // Threshold the image: set pixels over the threshold value to white.
-        Mat split = splitAndInvertChannels(pImageROI, alliance, allianceGrayParameters, pOutputFilenamePreamble);
-
-        // Sharpening the image does not improve the results.
-        //Mat sharp = sharpen(split, pOutputFilenamePreamble);
-
-        // See --
-        // https://pyimagesearch.com/2014/09/29/finding-brightest-spot-image-using-python-opencv/
-        Mat bright = new Mat();
-        Imgproc.GaussianBlur(split, bright, new Size(allianceBlurKernel, allianceBlurKernel), 0);
-
-        String blurFilename = pOutputFilenamePreamble + "_BLUR.png";
-        RobotLogCommon.d(TAG, "Writing " + blurFilename);
-        Imgcodecs.imwrite(blurFilename, bright);
-
-        Core.MinMaxLocResult brightResult = Core.minMaxLoc(bright);
-        RobotLogCommon.d(TAG, "Bright spot location " + brightResult.maxLoc + ", value " + brightResult.maxVal);
-
-        Mat brightSpotOut = pImageROI.clone();
-        Imgproc.circle(brightSpotOut, brightResult.maxLoc, (int) allianceBlurKernel, new Scalar(0, 255, 0));
-
-        String brightSpotFilename = pOutputFilenamePreamble + "_BRIGHT.png";
-        RobotLogCommon.d(TAG, "Writing " + brightSpotFilename);
-        Imgcodecs.imwrite(brightSpotFilename, brightSpotOut);
-
-        // If the bright spot is under the threshold then assume no Team Prop is present.
-        if (brightResult.maxVal < allianceGrayParameters.threshold_low) {
-            Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-            if (nposWindow == null)
-                throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
-
-            RobotLogCommon.d(TAG, "Bright spot value was under the threshold");
-            SpikeWindowUtils.drawSpikeWindows(pImageROI.clone(), spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, nposWindow.second);
+        // At a reduced scale the recognizers see the downscaled ROI and
+        // the parameters to match.
+        TeamPropRecognizer recognizer = recognizers.get(pTeamPropRecognitionPath);
+        if (recognizer == null) {
+            recognizer = TeamPropRecognizers.create(pTeamPropRecognitionPath, alliance,
+                    processingScale.scaleTeamPropParameters(pTeamPropParameters),
+                    processingScale.scaleSpikeWindowMapping(pSpikeWindowMapping), workspace);
+            recognizers.put(pTeamPropRecognitionPath, recognizer);
         }
 
-        return lookThroughWindows(brightSpotOut, brightResult.maxLoc, pOutputFilenamePreamble);
+        return recognizer;
     }
 
-    private TeamPropReturn grayscaleBrightSpotPath(Mat pImageROI, String pOutputFilenamePreamble,
-                                                   TeamPropParameters.BrightSpotParameters pBrightSpotParameters) {
-        // Use the grayscale and pixel count criteria parameters for the current alliance.
-        VisionParameters.GrayParameters allianceGrayParameters;
-        double allianceBlurKernel;
-        switch (alliance) {
+    // Extract from the original image ROI one of its BGR channels. The
+    // alliance determines which channel to pre-process and return. For
+    // better contrast the RED alliance uses the inversion of the blue
+    // channel and the BLUE alliance uses the inversion of the red channel.
+    // If the ROI has a single channel then the image source has already
+    // extracted and inverted the channel for the alliance. The returned
+    // image is pWorkspace.adjustedGray.
+    public static Mat splitAndInvertChannels(Mat pImageROI, RobotConstants.Alliance pAlliance, VisionParameters.GrayParameters pGrayParameters, String pOutputFilenamePreamble,
+                                             RecognitionWorkspace pWorkspace) {
+        Mat selectedChannel;
+        String invertedSuffix;
+        switch (pAlliance) {
             case RED: {
-                allianceGrayParameters = pBrightSpotParameters.redGrayParameters;
-                allianceBlurKernel = pBrightSpotParameters.redBlurKernel;
+                // The inversion of the blue channel gives better contrast
+                // than the red channel. B = 0, G = 1, R = 2
+                invertedSuffix = "_BLUE_INVERTED.png";
+                selectedChannel = selectInvertedChannel(pImageROI, 0, pWorkspace.invertedChannel);
                 break;
             }
             case BLUE: {
-                allianceGrayParameters = pBrightSpotParameters.blueGrayParameters;
-                allianceBlurKernel = pBrightSpotParameters.blueBlurKernel;
+                // The inversion of the red channel gives better contrast
+                // than the blue channel.
+                invertedSuffix = "_RED_INVERTED.png";
+                selectedChannel = selectInvertedChannel(pImageROI, 2, pWorkspace.invertedChannel);
                 break;
             }
-            default:
-                throw new AutonomousRobotException(TAG, "colorChannelBrightSpotPath requires an alliance selection");
+            default: throw new AutonomousRobotException(TAG, "Alliance must be RED or BLUE");
         }
 
-        Mat gray = new Mat();
-        Imgproc.cvtColor(pImageROI, gray, Imgproc.COLOR_BGR2GRAY);
-
-        String grayFilename = pOutputFilenamePreamble + "_GRAY.png";
-        RobotLogCommon.d(TAG, "Writing " + grayFilename);
-        Imgcodecs.imwrite(grayFilename, gray);
-
-        Core.bitwise_not(gray, gray); // invert for better contrast
-
-        String grayInvertedFilename = pOutputFilenamePreamble + "_GRAY_INVERTED.png";
-        RobotLogCommon.d(TAG, "Writing " + grayInvertedFilename);
-        Imgcodecs.imwrite(grayInvertedFilename, gray);
-
-        // Sharpening the image does not improve the results.
-        //Mat graySharp = sharpen(gray, pOutputFilenamePreamble + "_GRAY");
-
-        Mat brightGray = new Mat();
-        Imgproc.GaussianBlur(gray, brightGray, new Size(allianceBlurKernel, allianceBlurKernel), 0);
-
-        String blurFilename = pOutputFilenamePreamble + "_GRAY_BLUR.png";
-        RobotLogCommon.d(TAG, "Writing " + blurFilename);
-        Imgcodecs.imwrite(blurFilename, brightGray);
-
-        Core.MinMaxLocResult brightGrayResult = Core.minMaxLoc(brightGray);
-        RobotLogCommon.d(TAG, "Bright spot location " + brightGrayResult.maxLoc + ", value " + brightGrayResult.maxVal);
-
-        Mat brightGraySpotOut = pImageROI.clone();
-        Imgproc.circle(brightGraySpotOut, brightGrayResult.maxLoc, (int) allianceBlurKernel, new Scalar(0, 255, 0));
-
-        String brightSpotGrayFilename = pOutputFilenamePreamble + "_GRAY_BRIGHT.png";
-        RobotLogCommon.d(TAG, "Writing " + brightSpotGrayFilename);
-        Imgcodecs.imwrite(brightSpotGrayFilename, brightGraySpotOut);
-
-        // If the bright spot is under the threshold then assume no Team Prop is present.
-        if (brightGrayResult.maxVal < allianceGrayParameters.threshold_low) {
-            Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-            if (nposWindow == null)
-                throw new AutonomousRobotException(TAG, "spikeWindows key for WINDOW_NPOS is null");
-
-            RobotLogCommon.d(TAG, "Bright spot value was under the threshold");
-            SpikeWindowUtils.drawSpikeWindows(pImageROI.clone(), spikeWindows, pOutputFilenamePreamble);
-            return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, nposWindow.second);
+        if (pOutputFilenamePreamble != null) {
+            ImageFileWriter.write(pOutputFilenamePreamble + invertedSuffix, selectedChannel);
+            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + invertedSuffix);
         }
 
-        return lookThroughWindows(brightGraySpotOut, brightGrayResult.maxLoc, pOutputFilenamePreamble);
-    }
-
-    // Look through the left and right windows and determine if the team prop
-    // is in the left window, the right window, or neither. Also draw the boundaries
-    // of the windows.
-    private TeamPropReturn lookThroughWindows(Mat pPropOut, Point pCenterOfObject, String pOutputFilenamePreamble) {
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> leftWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.LEFT);
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> rightWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT);
-        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> nposWindow = spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS);
-        RobotConstantsCenterStage.TeamPropLocation foundLocation;
-
-        if (leftWindow == null || rightWindow == null || nposWindow == null)
-            throw new AutonomousRobotException(TAG, "Failed sanity check: no data for at least one of the spike windows");
-
-        // Try the left window.
-        if (pCenterOfObject.x >= leftWindow.first.x && pCenterOfObject.x < leftWindow.first.x + leftWindow.first.width) {
-            RobotLogCommon.d(TAG, "Success: Team Prop found in the left spike window: location " + leftWindow.second);
-            foundLocation = leftWindow.second;
-        } else
-            // Try the right window.
-            if (pCenterOfObject.x >= rightWindow.first.x && pCenterOfObject.x < rightWindow.first.x + rightWindow.first.width) {
-                RobotLogCommon.d(TAG, "Success: Team Prop found in the right spike window: location " + rightWindow.second);
-                foundLocation = rightWindow.second;
-            } else {
-                RobotLogCommon.d(TAG, "Team Prop not found in the left or right window: assuming location " + nposWindow.second);
-                foundLocation = nposWindow.second;
-            }
+        // Always adjust the grayscale.
+        Mat adjustedGray = ImageUtils.adjustGrayscaleMedian(selectedChannel,
+                pGrayParameters.median_target, pWorkspace.adjustedGray);
 
-        // Draw the spike windows on the ROI with the circles.
-        SpikeWindowUtils.drawSpikeWindows(pPropOut, spikeWindows, pOutputFilenamePreamble);
+        Morphology.open(adjustedGray, adjustedGray, Imgproc.MORPH_RECT, pWorkspace.smallMorphologyKernel);
 
-        return new TeamPropReturn(RobotConstants.RecognitionResults.RECOGNITION_SUCCESSFUL, foundLocation);
+        return adjustedGray;
     }
 
-    // Split the original image ROI into its BGR channels. The alliance
-    // determines which channel to pre-process and return. For better
-    // contrast the RED alliance uses the inversion of the blue channel
-    // and the BLUE alliance uses the inversion of the red channel.
-    public static Mat splitAndInvertChannels(Mat pImageROI, RobotConstants.Alliance pAlliance, VisionParameters.GrayParameters pGrayParameters, String pOutputFilenamePreamble) {
-        ArrayList<Mat> channels = new ArrayList<>(3);
-        Core.split(pImageROI, channels); // red or blue channel. B = 0, G = 1, R = 2
-        Mat selectedChannel;
+    // Produces the same binary image as splitAndInvertChannels followed
+    // by Imgproc.threshold but with far fewer passes over the image. The
+    // inversion, the median adjustment and the threshold are folded into
+    // a single lookup table and the morphology is applied to the binary
+    // image. Since the threshold is monotonic, thresholding after an
+    // opening is the same as opening after thresholding; for an inverted
+    // threshold the opening becomes a closing. The returned image is
+    // pWorkspace.thresholded.
+    public static Mat invertAdjustAndThreshold(Mat pImageROI, RobotConstants.Alliance pAlliance, VisionParameters.GrayParameters pGrayParameters,
+                                               String pOutputFilenamePreamble, RecognitionWorkspace pWorkspace) {
+        int bgrChannel;
+        String invertedSuffix;
         switch (pAlliance) {
             case RED: {
                 // The inversion of the blue channel gives better contrast
-                // than the red channel.
-                selectedChannel = channels.get(0);
-                Core.bitwise_not(selectedChannel, selectedChannel);
-                if (pOutputFilenamePreamble != null) {
-                    Imgcodecs.imwrite(pOutputFilenamePreamble + "_BLUE_INVERTED.png", selectedChannel);
-                    RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_BLUE_INVERTED.png");
-                }
+                // than the red channel. B = 0, G = 1, R = 2
+                invertedSuffix = "_BLUE_INVERTED.png";
+                bgrChannel = 0;
                 break;
             }
             case BLUE: {
                 // The inversion of the red channel gives better contrast
                 // than the blue channel.
-                selectedChannel = channels.get(2);
-                Core.bitwise_not(selectedChannel, selectedChannel);
-                if (pOutputFilenamePreamble != null) {
-                    Imgcodecs.imwrite(pOutputFilenamePreamble + "_RED_INVERTED.png", selectedChannel);
-                    RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + "_RED_INVERTED.png");
-                }
+                invertedSuffix = "_RED_INVERTED.png";
+                bgrChannel = 2;
                 break;
             }
             default: throw new AutonomousRobotException(TAG, "Alliance must be RED or BLUE");
         }
 
-        // Always adjust the grayscale.
-        Mat adjustedGray = ImageUtils.adjustGrayscaleMedian(selectedChannel,
-                pGrayParameters.median_target);
+        // If the ROI has a single channel then the image source has
+        // already extracted and inverted the channel for the alliance.
+        // Otherwise take the median of the inverted channel straight
+        // from the histogram of the original channel.
+        ChannelStatistics statistics = ImageUtils.getChannelStatistics();
+        boolean invert = pImageROI.channels() != 1;
+        Mat lutInput;
+        int medianGray;
+        if (!invert) {
+            lutInput = pImageROI;
+            medianGray = statistics.compute(pImageROI).getMedian();
+        } else {
+            medianGray = statistics.compute(pImageROI, bgrChannel, null).getInvertedMedian();
+            Core.extractChannel(pImageROI, pWorkspace.scratch, bgrChannel);
+            lutInput = pWorkspace.scratch;
+        }
 
-        Imgproc.erode(adjustedGray, adjustedGray, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3)));
-        Imgproc.dilate(adjustedGray, adjustedGray, Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3)));
+        if (pOutputFilenamePreamble != null) {
+            Mat invertedChannel = lutInput;
+            if (invert) {
+                Core.bitwise_not(lutInput, pWorkspace.invertedChannel);
+                invertedChannel = pWorkspace.invertedChannel;
+            }
+            ImageFileWriter.write(pOutputFilenamePreamble + invertedSuffix, invertedChannel);
+            RobotLogCommon.d(TAG, "Writing " + pOutputFilenamePreamble + invertedSuffix);
+        }
 
-        return adjustedGray;
+        return adjustAndThreshold(lutInput, invert, medianGray, pGrayParameters, pWorkspace);
+    }
+
+    // Shift the grayscale median of pLutInput, or of its inversion if
+    // pInvert is true, to the target, threshold it and clean up the
+    // binary image with the small morphology kernel of the workspace,
+    // all with a single lookup table.
+    // The returned image is pWorkspace.thresholded.
+    static Mat adjustAndThreshold(Mat pLutInput, boolean pInvert, int pMedianGray,
+                                  VisionParameters.GrayParameters pGrayParameters, RecognitionWorkspace pWorkspace) {
+        int adjustment = pGrayParameters.median_target - pMedianGray;
+        RobotLogCommon.d(TAG, "Original image: grayscale median " + pMedianGray);
+        RobotLogCommon.d(TAG, "Grayscale median target " + pGrayParameters.median_target);
+        RobotLogCommon.d(TAG, "Grayscale adjustment " + adjustment);
+        RobotLogCommon.d(TAG, "Threshold values: low " + pGrayParameters.threshold_low + ", high 255");
+
+        ImageUtils.fillInvertShiftThresholdLUT(pInvert, adjustment, pGrayParameters.threshold_low, pWorkspace.lutValues);
+        pWorkspace.lut.put(0, 0, pWorkspace.lutValues);
+        Core.LUT(pLutInput, pWorkspace.lut, pWorkspace.thresholded);
+
+        Mat thresholded = pWorkspace.thresholded;
+        if (pGrayParameters.threshold_low >= 0)
+            Morphology.open(thresholded, thresholded, Imgproc.MORPH_RECT, pWorkspace.smallMorphologyKernel);
+        else
+            Morphology.close(thresholded, thresholded, Imgproc.MORPH_RECT, pWorkspace.smallMorphologyKernel);
+
+        return thresholded;
+    }
+
+    private static Mat selectInvertedChannel(Mat pImageROI, int pBGRChannel, Mat pInvertedChannel) {
+        if (pImageROI.channels() == 1)
+            return pImageROI;
+
+        ImageUtils.extractInvertedChannel(pImageROI, pBGRChannel, pInvertedChannel);
+        return pInvertedChannel;
     }
 
     // ## This sharpening filter makes a difference in marginal cases.
@@ -513,9 +377,11 @@ public class TeamPropRecognition {
         Mat sharpMat = new Mat();
         Imgproc.filter2D(pDullMat, sharpMat, -1, kernel);
 
-        String sharpFilename = pOutputFilenamePreamble + "_SHARP.png";
-        RobotLogCommon.d(TAG, "Writing " + sharpFilename);
-        Imgcodecs.imwrite(sharpFilename, sharpMat);
+        if (pOutputFilenamePreamble != null) {
+            String sharpFilename = pOutputFilenamePreamble + "_SHARP.png";
+            RobotLogCommon.d(TAG, "Writing " + sharpFilename);
+            ImageFileWriter.write(sharpFilename, sharpMat);
+        }
 
         return sharpMat;
     }
@@ -0,0 +1,29 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+import org.opencv.core.Mat;
+
+// One Team Prop recognition path. A recognizer is created once per
+// OpMode through TeamPropRecognizers with its parameters for the
+// alliance already resolved and is then called for each frame. All of
+// the intermediate images come from the RecognitionWorkspace passed to
+// the factory so a recognizer may only be used by one thread at a time.
+public interface TeamPropRecognizer {
+
+    // Whether the path can start from a single-channel ROI, i.e. the
+    // inverted color channel for the alliance as delivered by the image
+    // source, instead of a BGR ROI.
+    boolean acceptsSingleChannel();
+
+    // pOutputFilenamePreamble may be null, in which case no image
+    // files are written.
+    TeamPropReturn recognize(Mat pImageROI, String pOutputFilenamePreamble);
+
+    interface Factory {
+        TeamPropRecognizer create(RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                  SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace);
+    }
+
+}
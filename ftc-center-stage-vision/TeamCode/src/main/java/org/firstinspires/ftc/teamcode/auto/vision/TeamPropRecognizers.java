@@ -0,0 +1,56 @@
+package org.firstinspires.ftc.teamcode.auto.vision;
+
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
+import org.firstinspires.ftc.teamcode.xml.TeamPropParameters;
+
+import java.util.EnumMap;
+
+// Registry of the Team Prop recognition paths. To add a path, add it
+// to TeamPropRecognitionPath, implement TeamPropRecognizer and register
+// its factory here; the dispatcher in TeamPropRecognition does not
+// change.
+public class TeamPropRecognizers {
+    private static final String TAG = TeamPropRecognizers.class.getSimpleName();
+
+    private static final EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, TeamPropRecognizer.Factory> factories =
+            new EnumMap<>(RobotConstantsCenterStage.TeamPropRecognitionPath.class);
+
+    static {
+        register(RobotConstantsCenterStage.TeamPropRecognitionPath.COLOR_CHANNEL_CIRCLES, ColorChannelCirclesRecognizer::new);
+        register(RobotConstantsCenterStage.TeamPropRecognitionPath.COLOR_CHANNEL_PIXEL_COUNT, ColorChannelPixelCountRecognizer::new);
+        register(RobotConstantsCenterStage.TeamPropRecognitionPath.GRAYSCALE_PIXEL_COUNT, GrayscalePixelCountRecognizer::new);
+        register(RobotConstantsCenterStage.TeamPropRecognitionPath.COLOR_CHANNEL_BRIGHT_SPOT, ColorChannelBrightSpotRecognizer::new);
+        register(RobotConstantsCenterStage.TeamPropRecognitionPath.GRAYSCALE_BRIGHT_SPOT, GrayscaleBrightSpotRecognizer::new);
+    }
+
+    // Replaces any factory already registered for the path, e.g. to
+    // benchmark an alternative implementation.
+    public static synchronized void register(RobotConstantsCenterStage.TeamPropRecognitionPath pPath,
+                                             TeamPropRecognizer.Factory pFactory) {
+        factories.put(pPath, pFactory);
+    }
+
+    public static synchronized boolean isRegistered(RobotConstantsCenterStage.TeamPropRecognitionPath pPath) {
+        return factories.containsKey(pPath);
+    }
+
+    public static TeamPropRecognizer create(RobotConstantsCenterStage.TeamPropRecognitionPath pPath,
+                                            RobotConstants.Alliance pAlliance, TeamPropParameters pTeamPropParameters,
+                                            SpikeWindowMapping pSpikeWindowMapping, RecognitionWorkspace pWorkspace) {
+        TeamPropRecognizer.Factory factory;
+        synchronized (TeamPropRecognizers.class) {
+            factory = factories.get(pPath);
+        }
+
+        if (factory == null)
+            throw new AutonomousRobotException(TAG, "No recognizer registered for recognition path " + pPath);
+
+        RobotLogCommon.d(TAG, "Creating the recognizer for path " + pPath + ", alliance " + pAlliance);
+        return factory.create(pAlliance, pTeamPropParameters, pSpikeWindowMapping, pWorkspace);
+    }
+
+}
@@ -2,6 +2,9 @@ package org.firstinspires.ftc.teamcode.auto.vision;
 
 import org.firstinspires.ftc.teamcode.common.RobotConstants;
 import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+import org.firstinspires.ftc.teamcode.robot.device.camera.FrameInfo;
+
+import java.util.EnumMap;
 
 // Holds the results of image recognition.
 public class TeamPropReturn {
@@ -9,14 +12,49 @@ public class TeamPropReturn {
     public final RobotConstants.RecognitionResults recognitionResults;
     public final RobotConstantsCenterStage.TeamPropLocation teamPropLocation;
 
+    // The image on which the results are based and the time spent
+    // getting to them; null if recognition did not get that far.
+    public final FrameInfo frameInfo;
+    public final RecognitionLatency latency;
+
+    // The number of frames that voted for each location; null unless
+    // the result comes from multi-frame consensus recognition.
+    public final EnumMap<RobotConstantsCenterStage.TeamPropLocation, Integer> votes;
+
     public TeamPropReturn(RobotConstants.RecognitionResults pRecognitionResults, RobotConstantsCenterStage.TeamPropLocation pTeamPropLocation) {
         recognitionResults = pRecognitionResults;
         teamPropLocation = pTeamPropLocation;
+        frameInfo = null;
+        latency = null;
+        votes = null;
     }
 
     // Constructor for OpenCV errors such as "no such file".
     public TeamPropReturn(RobotConstants.RecognitionResults pRecognitionResults) {
         recognitionResults = pRecognitionResults;
         teamPropLocation = RobotConstantsCenterStage.TeamPropLocation.SPIKE_NPOS;
+        frameInfo = null;
+        latency = null;
+        votes = null;
+    }
+
+    // Attach the image information and latency to the results of a
+    // recognition path.
+    public TeamPropReturn(TeamPropReturn pTeamPropReturn, FrameInfo pFrameInfo, RecognitionLatency pLatency) {
+        recognitionResults = pTeamPropReturn.recognitionResults;
+        teamPropLocation = pTeamPropReturn.teamPropLocation;
+        frameInfo = pFrameInfo;
+        latency = pLatency;
+        votes = null;
+    }
+
+    // Attach the vote tally to the result of the frame that decided
+    // the consensus.
+    public TeamPropReturn(TeamPropReturn pTeamPropReturn, EnumMap<RobotConstantsCenterStage.TeamPropLocation, Integer> pVotes) {
+        recognitionResults = pTeamPropReturn.recognitionResults;
+        teamPropLocation = pTeamPropReturn.teamPropLocation;
+        frameInfo = pTeamPropReturn.frameInfo;
+        latency = pTeamPropReturn.latency;
+        votes = pVotes;
     }
 }
\ No newline at end of file
@@ -54,13 +54,31 @@ public class RobotConstantsCenterStage {
     }
 
     public enum TeamPropRecognitionPath {
-        COLOR_CHANNEL_CIRCLES, COLOR_CHANNEL_PIXEL_COUNT,
+        COLOR_CHANNEL_CIRCLES, COLOR_CHANNEL_PIXEL_COUNT, GRAYSCALE_PIXEL_COUNT,
         COLOR_CHANNEL_BRIGHT_SPOT, GRAYSCALE_BRIGHT_SPOT
     }
 
+    // Which of the image files that document Team Prop recognition to
+    // keep. At NONE the annotated copies and drawing are skipped as well.
+    public enum ArtifactLevel {
+        NONE, DECISION_ONLY, FAILURES_ONLY, ALL
+    }
+
+    // How the bright spot paths find the brightest area: the peak of a
+    // GaussianBlur or the brightest box from an integral image.
+    public enum BrightSpotEngine {
+        GAUSSIAN, INTEGRAL_BOX
+    }
+
+    // Where the circles path runs HoughCircles: once over the whole ROI
+    // or over each spike window in turn, largest first.
+    public enum CircleSearch {
+        WHOLE_ROI, SPIKE_WINDOWS
+    }
+
     // Relative position of a barcode element within the ROI.
     public enum SpikeLocationWindow {
-        LEFT, RIGHT, WINDOW_NPOS
+        LEFT, CENTER, RIGHT, WINDOW_NPOS // CENTER is optional
     }
 
     // Constructor parameters are the AprilTag id of the
@@ -0,0 +1,37 @@
+package org.firstinspires.ftc.teamcode.robot.device.camera;
+
+import java.util.Date;
+
+// Describes a single image as it is handed to a consumer by an
+// ImageProvider.
+public class FrameInfo {
+
+    // The exposure and gain are not known, e.g. because the webcam is
+    // in automatic exposure mode.
+    public static final int CAMERA_SETTING_AUTO = -1;
+
+    public final long sequenceNumber;
+    public final long captureTimeNanos; // System.nanoTime() timebase
+    public final Date timestamp; // wall clock time of the capture
+    public final long handoffTimeNanos; // when the consumer received the image
+    public final int exposureMs;
+    public final int gain;
+
+    public FrameInfo(long pSequenceNumber, long pCaptureTimeNanos, Date pTimestamp,
+                     long pHandoffTimeNanos, int pExposureMs, int pGain) {
+        sequenceNumber = pSequenceNumber;
+        captureTimeNanos = pCaptureTimeNanos;
+        timestamp = pTimestamp;
+        handoffTimeNanos = pHandoffTimeNanos;
+        exposureMs = pExposureMs;
+        gain = pGain;
+    }
+
+    @Override
+    public String toString() {
+        return "frame " + sequenceNumber +
+                ", exposure " + (exposureMs == CAMERA_SETTING_AUTO ? "auto" : exposureMs + " ms") +
+                ", gain " + (gain == CAMERA_SETTING_AUTO ? "auto" : Integer.toString(gain));
+    }
+
+}
@@ -3,11 +3,17 @@ package org.firstinspires.ftc.teamcode.robot.device.camera;
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.opencv.core.Mat;
 
-import java.util.Date;
-
 public interface ImageProvider {
 
-    // Images must always be returned in the BGR format.
+    // Images must be returned in the BGR format or, for the recognition
+    // paths that use only one inverted color channel, as that channel.
+    // The FrameInfo carries the capture time, which replaces the Date of
+    // earlier versions, along with the sequence number and camera settings.
     // LocalDateTime requires minSdkVersion 26  public Pair<Mat, LocalDateTime> getImage() throws InterruptedException;
-    Pair<Mat, Date> getImage() throws InterruptedException;
+    Pair<Mat, FrameInfo> getImage() throws InterruptedException;
+
+    // Hand the image returned by the most recent call to getImage()
+    // back to the provider. Providers that reuse their image buffers
+    // may overwrite the image after this call.
+    default void releaseImage() {}
 }
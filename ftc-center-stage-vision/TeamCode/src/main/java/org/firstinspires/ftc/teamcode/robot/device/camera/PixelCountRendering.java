@@ -5,21 +5,25 @@ import android.graphics.Canvas;
 
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 
-import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.platform.android.WorkingDirectory;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageFileWriter;
 import org.firstinspires.ftc.teamcode.auto.vision.ImageUtils;
+import org.firstinspires.ftc.teamcode.auto.vision.MatTracker;
+import org.firstinspires.ftc.teamcode.auto.vision.RecognitionWorkspace;
+import org.firstinspires.ftc.teamcode.auto.vision.SceneChangeDetector;
+import org.firstinspires.ftc.teamcode.auto.vision.SpikeWindowScoring;
 import org.firstinspires.ftc.teamcode.auto.vision.TeamPropRecognition;
 import org.firstinspires.ftc.teamcode.common.RobotConstants;
 import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
 import org.firstinspires.ftc.teamcode.xml.SpikeWindowMapping;
 import org.firstinspires.ftc.teamcode.xml.VisionParameters;
 import org.opencv.android.Utils;
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.Rect;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -31,13 +35,20 @@ public class PixelCountRendering implements CameraStreamRendering {
     private final RobotConstants.Alliance alliance;
     private final AtomicReference<VisionParameters.GrayParameters> allianceGrayParameters = new AtomicReference<>();
     private final SpikeWindowMapping spikeWindowMapping;
-    private final Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> leftWindow;
-    private final Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> rightWindow;
-    private AtomicReference<Pair<String, String>> teamPropResults = new AtomicReference<>(); // null AtomiceReference
+    private AtomicReference<List<String>> teamPropResults = new AtomicReference<>(); // null AtomiceReference
     private final AtomicBoolean requestImageCapture = new AtomicBoolean();
     private int captureCount;
     private final String outputFilePreamble;
     private final Mat bgrFrame = new Mat();
+    private final RecognitionWorkspace workspace;
+    private final SpikeWindowScoring windowScoring;
+    private boolean released; // guarded by this
+
+    // While the ROI and the threshold do not change the previous
+    // thresholded preview and pixel counts still hold.
+    private final SceneChangeDetector sceneChangeDetector = new SceneChangeDetector();
+    private Bitmap previewBitmap;
+    private VisionParameters.GrayParameters previewGrayParameters;
 
     public PixelCountRendering(LinearOpMode pLinear, RobotConstantsCenterStage.OpMode pOpMode,
                                RobotConstants.Alliance pAlliance,
@@ -48,13 +59,14 @@ public class PixelCountRendering implements CameraStreamRendering {
         alliance = pAlliance;
         allianceGrayParameters.set(pAllianceGrayParameters);
         spikeWindowMapping = pSpikeWindowMapping;
-        leftWindow = spikeWindowMapping.spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.LEFT);
-        rightWindow = spikeWindowMapping.spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT);
         outputFilePreamble = WorkingDirectory.getWorkingDirectory() + RobotConstants.IMAGE_DIR;
+        workspace = new RecognitionWorkspace(spikeWindowMapping.imageParameters);
+        windowScoring = new SpikeWindowScoring(workspace);
     }
 
+    // One line for each visible spike window, from left to right.
     // May return null if no results have been set.
-    public Pair<String, String> getTeamPropResults() {
+    public List<String> getTeamPropResults() {
         return teamPropResults.get();
     }
 
@@ -66,61 +78,90 @@ public class PixelCountRendering implements CameraStreamRendering {
         requestImageCapture.set(true);
     }
 
-    public void renderFrameToCanvas(Mat pWebcamFrame, Canvas pDriverStationScreenCanvas,
-                                    int onscreenWidth, int onscreenHeight) {
+    // Call after this rendering has been replaced in the
+    // CameraStreamProcessor or when the OpMode is finished with it.
+    public synchronized void release() {
+        if (released)
+            return;
+
+        released = true;
+        workspace.release();
+        MatTracker.release(bgrFrame);
+        sceneChangeDetector.release();
+    }
+
+    // Synchronized with release() so that the workspace cannot be
+    // released while the camera thread is rendering a frame.
+    public synchronized void renderFrameToCanvas(Mat pWebcamFrame, Canvas pDriverStationScreenCanvas,
+                                                 int onscreenWidth, int onscreenHeight) {
+        if (released)
+            return; // replaced by another rendering
+
         boolean captureNow = requestImageCapture.getAndSet(false);
         if (captureNow)
             captureCount++;
 
-        Imgproc.cvtColor(pWebcamFrame, bgrFrame, Imgproc.COLOR_RGBA2BGR);
-
+        // Only convert the full frame to BGR if we're going to write it out.
         if (captureNow) {
+            Imgproc.cvtColor(pWebcamFrame, bgrFrame, Imgproc.COLOR_RGBA2BGR);
+            MatTracker.track(MatTracker.Stage.RENDERING, bgrFrame);
             String outputFilename = outputFilePreamble + "PixelCount_" + opMode + String.format(Locale.US, "_%04d_IMG.png", captureCount);
-            Imgcodecs.imwrite(outputFilename, bgrFrame);
+            ImageFileWriter.write(outputFilename, bgrFrame);
         }
 
-        Mat imageROI = ImageUtils.preProcessImage(bgrFrame, null, spikeWindowMapping.imageParameters);
+        // Crop the RGBA frame and pull the inverted channel for the
+        // alliance straight out of it; the RGBA order is R = 0, G = 1,
+        // B = 2, A = 3.
+        Mat rgbaROI = ImageUtils.preProcessImage(pWebcamFrame, null, spikeWindowMapping.imageParameters);
 
         // Use the grayscale and pixel count criteria parameters for the current alliance.
         VisionParameters.GrayParameters localGrayParameters = allianceGrayParameters.get();
-        Mat split = TeamPropRecognition.splitAndInvertChannels(imageROI, alliance, localGrayParameters, null);
+        boolean sceneChanged = sceneChangeDetector.hasChanged(rgbaROI);
+        if (!captureNow && !sceneChanged && previewBitmap != null && localGrayParameters == previewGrayParameters) {
+            if (rgbaROI != pWebcamFrame)
+                MatTracker.release(rgbaROI); // only a header on the frame
+            drawPreview(pDriverStationScreenCanvas, onscreenWidth, onscreenHeight);
+            return;
+        }
 
+        ImageUtils.extractInvertedChannel(rgbaROI, alliance == RobotConstants.Alliance.RED ? 2 : 0, workspace.invertedChannel);
+        if (rgbaROI != pWebcamFrame)
+            MatTracker.release(rgbaROI); // only a header on the frame
         if (captureNow) {
             String outputFilename = outputFilePreamble + "PixelCount_" + opMode + String.format(Locale.US, "_%04d_INV.png", captureCount);
-            Imgcodecs.imwrite(outputFilename, split);
+            ImageFileWriter.write(outputFilename, workspace.invertedChannel);
         }
 
-        Mat thresholded = new Mat(); // output binary image
-        Imgproc.threshold(split, thresholded,
-                Math.abs(localGrayParameters.threshold_low),    // threshold value
-                255,   // white
-                localGrayParameters.threshold_low >= 0 ? Imgproc.THRESH_BINARY : Imgproc.THRESH_BINARY_INV); // thresholding type
+        // Median adjustment, threshold and morphology in one fused stage.
+        Mat thresholded = TeamPropRecognition.invertAdjustAndThreshold(workspace.invertedChannel, alliance, localGrayParameters, null, workspace);
 
         if (captureNow) {
             String outputFilename = outputFilePreamble + "PixelCount_" + opMode + String.format(Locale.US, "_%04d_THR.png", captureCount);
-            Imgcodecs.imwrite(outputFilename, thresholded);
+            ImageFileWriter.write(outputFilename, thresholded);
         }
 
-        // Get the white pixel count for both the left and right
-        // spike windows.
-        Rect leftSpikeWindowBoundary = leftWindow.first;
-        Mat leftSpikeWindow = thresholded.submat(leftSpikeWindowBoundary);
-        int leftNonZeroCount = Core.countNonZero(leftSpikeWindow);
-        String leftwindowResults = leftWindow.second.toString() + " white pixel count " + leftNonZeroCount;
+        // Get the white pixel count for each of the visible spike
+        // windows from a single integral image.
+        windowScoring.computeIntegral(thresholded);
+        EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, SpikeWindowScoring.WindowScore> windowScores =
+                windowScoring.scoreWindows(spikeWindowMapping.spikeWindows, spikeWindowMapping.windowGrid);
+        List<String> windowResults = new ArrayList<>();
+        for (SpikeWindowScoring.WindowScore score : windowScores.values())
+            windowResults.add(score.propLocation.toString() + " white pixel count " + score.whitePixelCount);
 
-        Rect rightSpikeWindowBoundary = rightWindow.first;
-        Mat rightSpikeWindow = thresholded.submat(rightSpikeWindowBoundary);
-        int rightNonZeroCount = Core.countNonZero(rightSpikeWindow);
-        String rightwindowResults = rightWindow.second.toString() + " white pixel count " + rightNonZeroCount;
-
-        teamPropResults.set(Pair.create(leftwindowResults, rightwindowResults));
+        teamPropResults.set(windowResults);
 
         // Show the thresholded ROI in the DS camera stream.
         // First convert the thresholded ROI to an Android Bitmap.
         // See https://stackoverflow.com/questions/44579822/convert-opencv-mat-to-android-bitmap
-        Bitmap bmp = Bitmap.createBitmap(thresholded.cols(), thresholded.rows(), Bitmap.Config.RGB_565);
-        Utils.matToBitmap(thresholded, bmp);
+        if (previewBitmap == null || previewBitmap.getWidth() != thresholded.cols() || previewBitmap.getHeight() != thresholded.rows())
+            previewBitmap = Bitmap.createBitmap(thresholded.cols(), thresholded.rows(), Bitmap.Config.RGB_565);
+        Utils.matToBitmap(thresholded, previewBitmap);
+        previewGrayParameters = localGrayParameters;
+        drawPreview(pDriverStationScreenCanvas, onscreenWidth, onscreenHeight);
+    }
 
+    private void drawPreview(Canvas pDriverStationScreenCanvas, int onscreenWidth, int onscreenHeight) {
         // What to do about scaling the thresholded Bitmap for display on the
         // Canvas? This is not so easy because of the odd ROI sizes. So for a
         // Canvas (onscreenWidth, onscreenHeight) of 960x720, an ROI of 492x259
@@ -143,7 +184,7 @@ public class PixelCountRendering implements CameraStreamRendering {
         // This method displays a centered inset.
         float insetLeft = (float) ((onscreenWidth / 2) - (spikeWindowMapping.imageParameters.image_roi.width / 2));
         float insetTop = (float) ((onscreenHeight / 2) - (spikeWindowMapping.imageParameters.image_roi.height / 2));
-        pDriverStationScreenCanvas.drawBitmap(bmp, insetLeft, insetTop, null);
+        pDriverStationScreenCanvas.drawBitmap(previewBitmap, insetLeft, insetTop, null);
     }
 
 }
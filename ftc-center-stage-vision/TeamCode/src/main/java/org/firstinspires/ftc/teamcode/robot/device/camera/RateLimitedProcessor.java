@@ -0,0 +1,62 @@
+package org.firstinspires.ftc.teamcode.robot.device.camera;
+
+import android.graphics.Canvas;
+
+import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.vision.VisionProcessor;
+import org.opencv.core.Mat;
+
+import java.util.concurrent.TimeUnit;
+
+// Wraps a VisionProcessor so that it only sees every Nth frame and/or
+// at most a given number of frames per second. The VisionPortal calls
+// processFrame for every frame; on a skipped frame the wrapped processor
+// is not called and the user context from the last frame it processed
+// is passed on to onDrawFrame.
+public class RateLimitedProcessor implements VisionProcessor {
+
+    private final VisionProcessor processor;
+    private final int frameDecimation; // 1 = every frame
+    private final long minFrameIntervalNanos; // 0 = no limit
+
+    // Only accessed from the VisionPortal's frame thread.
+    private long frameCount;
+    private long lastProcessedNanos;
+    private boolean processedAnyFrame;
+    private Object lastUserContext;
+
+    public RateLimitedProcessor(VisionProcessor pProcessor, VisionPortalWebcamConfiguration.ProcessorFrameRate pFrameRate) {
+        processor = pProcessor;
+        frameDecimation = pFrameRate.frameDecimation;
+        minFrameIntervalNanos = pFrameRate.maxFps == 0 ? 0 :
+                (long) (TimeUnit.SECONDS.toNanos(1) / pFrameRate.maxFps);
+    }
+
+    public VisionProcessor getProcessor() {
+        return processor;
+    }
+
+    @Override
+    public void init(int width, int height, CameraCalibration calibration) {
+        processor.init(width, height, calibration);
+    }
+
+    @Override
+    public Object processFrame(Mat input, long captureTimeNanos) {
+        boolean decimated = (frameCount++ % frameDecimation) != 0;
+        boolean tooSoon = processedAnyFrame && captureTimeNanos - lastProcessedNanos < minFrameIntervalNanos;
+        if (decimated || tooSoon)
+            return lastUserContext;
+
+        processedAnyFrame = true;
+        lastProcessedNanos = captureTimeNanos;
+        lastUserContext = processor.processFrame(input, captureTimeNanos);
+        return lastUserContext;
+    }
+
+    @Override
+    public void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext) {
+        processor.onDrawFrame(canvas, onscreenWidth, onscreenHeight, scaleBmpPxToCanvasPx, scaleCanvasDensity, userContext);
+    }
+
+}
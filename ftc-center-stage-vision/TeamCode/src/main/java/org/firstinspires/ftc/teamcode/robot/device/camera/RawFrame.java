@@ -0,0 +1,88 @@
+package org.firstinspires.ftc.teamcode.robot.device.camera;
+
+import org.firstinspires.ftc.teamcode.auto.vision.MatTracker;
+import org.opencv.core.Mat;
+
+import java.util.Date;
+
+// One slot in the frame pool of the RawFrameProcessor. The Mat is
+// allocated once and reused for every frame that is written into this
+// slot so a consumer must return the frame to the processor with
+// RawFrameProcessor.releaseWebcamFrame() as soon as it is done with it.
+public class RawFrame {
+
+    final int poolIndex;
+    private final Mat frame = MatTracker.track(MatTracker.Stage.CAPTURE, new Mat());
+
+    // The fields below are written by the camera thread while the slot
+    // is not visible to any consumer, i.e. while holding the pool lock
+    // in RawFrameProcessorImpl.
+    private long sequenceNumber;
+    private long captureTimeNanos;
+    private long timestampMs;
+    private int exposureMs;
+    private int gain;
+    private long framesSkipped;
+
+    RawFrame(int pPoolIndex) {
+        poolIndex = pPoolIndex;
+    }
+
+    // The frame is in BGR order unless the RawFrameProcessor was built
+    // with a single-channel FrameFormat. If the RawFrameProcessor was
+    // built with a capture ROI the frame contains only that ROI.
+    public Mat getFrame() {
+        return frame;
+    }
+
+    // Sequence numbers are assigned to every frame delivered by the
+    // VisionPortal, including those that are never published, and
+    // increase monotonically.
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    // The time at which the camera captured the frame in the
+    // System.nanoTime() timebase.
+    public long getCaptureTimeNanos() {
+        return captureTimeNanos;
+    }
+
+    public Date getTimestamp() {
+        return new Date(timestampMs);
+    }
+
+    // FrameInfo.CAMERA_SETTING_AUTO unless the exposure and gain were
+    // set manually.
+    public int getExposureMs() {
+        return exposureMs;
+    }
+
+    public int getGain() {
+        return gain;
+    }
+
+    // The number of frames that arrived between the frame previously
+    // acquired by a consumer and this one.
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    void setFrameData(long pSequenceNumber, long pCaptureTimeNanos, long pTimestampMs,
+                      int pExposureMs, int pGain) {
+        sequenceNumber = pSequenceNumber;
+        captureTimeNanos = pCaptureTimeNanos;
+        timestampMs = pTimestampMs;
+        exposureMs = pExposureMs;
+        gain = pGain;
+    }
+
+    void setFramesSkipped(long pFramesSkipped) {
+        framesSkipped = pFramesSkipped;
+    }
+
+    void release() {
+        MatTracker.release(frame);
+    }
+
+}
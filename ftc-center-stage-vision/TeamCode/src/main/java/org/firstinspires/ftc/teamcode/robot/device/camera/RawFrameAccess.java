@@ -1,14 +1,9 @@
 package org.firstinspires.ftc.teamcode.robot.device.camera;
 
-import static android.os.SystemClock.sleep;
-
-import com.qualcomm.robotcore.util.ElapsedTime;
-
 import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
 import org.opencv.core.Mat;
 
-import java.util.Date;
 import java.util.Objects;
 
 // Use the ImageProvider interface to provide cross-project compatibility
@@ -16,27 +11,50 @@ import java.util.Objects;
 public class RawFrameAccess implements ImageProvider {
     private static final String TAG = RawFrameAccess.class.getSimpleName();
 
+    private static final long FRAME_TIMEOUT_MS = 1000;
+
     private final RawFrameProcessor rawFrameProcessor;
+    private final long capturedNoEarlierThanNanos;
+    private RawFrame acquiredFrame;
 
     public RawFrameAccess(RawFrameProcessor pRawFrameProcessor) {
+        this(pRawFrameProcessor, 0);
+    }
+
+    // Only frames captured at or after pCapturedNoEarlierThanNanos in the
+    // System.nanoTime() timebase are returned; this keeps a frame that the
+    // camera captured before, e.g., the start of a match from being used.
+    public RawFrameAccess(RawFrameProcessor pRawFrameProcessor, long pCapturedNoEarlierThanNanos) {
         rawFrameProcessor = pRawFrameProcessor;
+        capturedNoEarlierThanNanos = pCapturedNoEarlierThanNanos;
     }
 
-    public Pair<Mat, Date> getImage() {
-        Pair<Mat, Date> frameVal = null;
-        ElapsedTime dataAcquiredTimer = new ElapsedTime();
-        dataAcquiredTimer.reset(); // start
-        while (dataAcquiredTimer.milliseconds() < 1000) {
-            frameVal = Objects.requireNonNull(rawFrameProcessor, TAG + " getImage(): rawFrameProcessor unexpectedly null").getWebcamFrame();
-            if (frameVal != null)
-                break;
-            else {
-                RobotLogCommon.v(TAG, "No available webcam frame");
-                sleep(50);
-            }
+    // Blocks until the processor publishes a qualifying frame.
+    // The returned Mat belongs to the frame pool of the RawFrameProcessor;
+    // it remains valid until releaseImage() or the next call to getImage().
+    public Pair<Mat, FrameInfo> getImage() throws InterruptedException {
+        releaseImage(); // in case the caller did not
+
+        RawFrame frameVal = Objects.requireNonNull(rawFrameProcessor, TAG + " getImage(): rawFrameProcessor unexpectedly null")
+                .awaitWebcamFrame(FRAME_TIMEOUT_MS, capturedNoEarlierThanNanos);
+        if (frameVal == null) {
+            RobotLogCommon.d(TAG, "Timed out waiting for a webcam frame");
+            return null;
         }
 
-        return frameVal;
+        acquiredFrame = frameVal;
+        FrameInfo frameInfo = new FrameInfo(frameVal.getSequenceNumber(), frameVal.getCaptureTimeNanos(),
+                frameVal.getTimestamp(), System.nanoTime(), frameVal.getExposureMs(), frameVal.getGain());
+        RobotLogCommon.d(TAG, "Acquired webcam " + frameInfo + ", frames skipped " + frameVal.getFramesSkipped());
+        return Pair.create(frameVal.getFrame(), frameInfo);
+    }
+
+    @Override
+    public void releaseImage() {
+        if (acquiredFrame != null) {
+            rawFrameProcessor.releaseWebcamFrame(acquiredFrame);
+            acquiredFrame = null;
+        }
     }
 
 }
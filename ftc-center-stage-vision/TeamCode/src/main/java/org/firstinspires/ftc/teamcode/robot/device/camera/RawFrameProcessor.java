@@ -36,26 +36,97 @@
 
 package org.firstinspires.ftc.teamcode.robot.device.camera;
 
-import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.vision.VisionProcessor;
-import org.opencv.core.Mat;
-
-import java.util.Date;
+import org.opencv.core.Rect;
 
 // Follow the class relationships of the AprilTag sample in which
 // AprilTagProcessorImpl inherits from AprilTagProcessorImpl.
 public abstract class RawFrameProcessor implements VisionProcessor {
 
+    private static final String TAG = RawFrameProcessor.class.getSimpleName();
+
+    // CONTINUOUS converts every frame delivered by the VisionPortal.
+    // ON_DEMAND converts a frame only when a consumer has asked for one
+    // and otherwise returns from processFrame immediately, which leaves
+    // the CPU to other processors on the same VisionPortal.
+    public enum CaptureMode {CONTINUOUS, ON_DEMAND}
+
+    // BGR is the full color frame. RED_INVERTED and BLUE_INVERTED are
+    // single-channel frames that contain the inversion of one channel,
+    // which is all that the color channel pixel count and bright spot
+    // recognition paths use.
+    public enum FrameFormat {BGR, RED_INVERTED, BLUE_INVERTED}
+
     public static class Builder {
+        // Triple buffering: one frame held by a consumer, one frame
+        // ready for the next consumer and one frame being written.
+        private int framePoolSize = 3;
+        private CaptureMode captureMode = CaptureMode.CONTINUOUS;
+        private Rect captureROI; // null means the full frame
+        private FrameFormat frameFormat = FrameFormat.BGR;
+
+        // More than three frames are only useful if a consumer holds on
+        // to more than one frame at a time.
+        public Builder setFramePoolSize(int pFramePoolSize) {
+            if (pFramePoolSize < 3)
+                throw new AutonomousRobotException(TAG, "The frame pool must contain at least 3 frames");
+            framePoolSize = pFramePoolSize;
+            return this;
+        }
+
+        public Builder setCaptureMode(CaptureMode pCaptureMode) {
+            captureMode = pCaptureMode;
+            return this;
+        }
+
+        // Copy and convert only this rectangle of each frame. The ROI
+        // is in the coordinates of the full webcam frame.
+        public Builder setCaptureROI(Rect pCaptureROI) {
+            if (pCaptureROI.x < 0 || pCaptureROI.y < 0 || pCaptureROI.width <= 0 || pCaptureROI.height <= 0)
+                throw new AutonomousRobotException(TAG, "Invalid capture ROI " + pCaptureROI);
+            captureROI = pCaptureROI.clone();
+            return this;
+        }
+
+        public Builder setFrameFormat(FrameFormat pFrameFormat) {
+            frameFormat = pFrameFormat;
+            return this;
+        }
+
         // Having a base class create an instance of a child class is
         // questionable but we'll follow the AprilTagProcessor, which
         // does exactly this.
         public RawFrameProcessor build() {
-            return new RawFrameProcessorImpl();
+            return new RawFrameProcessorImpl(framePoolSize, captureMode, captureROI, frameFormat);
         }
     }
 
-    public abstract Pair<Mat,Date> getWebcamFrame();
+    // Returns the most recent frame that has not already been acquired
+    // or null if no such frame is available. The frame belongs to the
+    // caller until it is passed to releaseWebcamFrame(). In ON_DEMAND
+    // mode a call that returns null requests the conversion of the next
+    // frame so that a later call will succeed.
+    public abstract RawFrame acquireWebcamFrame();
+
+    // Blocks until a frame that has not already been acquired and that
+    // was captured no earlier than pCapturedNoEarlierThanNanos (in the
+    // System.nanoTime() timebase) is available or until the timeout
+    // expires. Returns null on timeout. As with acquireWebcamFrame() the
+    // frame belongs to the caller until it is passed to releaseWebcamFrame().
+    public abstract RawFrame awaitWebcamFrame(long pTimeoutMs, long pCapturedNoEarlierThanNanos) throws InterruptedException;
+
+    public abstract void releaseWebcamFrame(RawFrame pRawFrame);
+
+    // Record the current camera settings so that they can be attached
+    // to every frame; use FrameInfo.CAMERA_SETTING_AUTO for automatic.
+    public abstract void setCameraSettings(int pExposureMs, int pGain);
+
+    // Releases the frame pool and wakes any consumer that is waiting for
+    // a frame; from then on no frames are delivered. A frame that is
+    // held by a consumer or that is being written is released when it
+    // is handed back. May be called more than once.
+    public abstract void close();
 
 }
 
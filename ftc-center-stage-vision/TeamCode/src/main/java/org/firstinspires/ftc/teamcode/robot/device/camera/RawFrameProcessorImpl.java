@@ -38,22 +38,65 @@ package org.firstinspires.ftc.teamcode.robot.device.camera;
 
 import android.graphics.Canvas;
 
-import org.firstinspires.ftc.ftcdevcommon.Pair;
-
+import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
 import org.firstinspires.ftc.robotcore.internal.camera.calibration.CameraCalibration;
+import org.firstinspires.ftc.teamcode.auto.vision.ImageUtils;
+import org.firstinspires.ftc.teamcode.auto.vision.MatTracker;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
 import org.opencv.core.Mat;
+import org.opencv.core.Rect;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 // Follow the class relationships of the AprilTag sample in which
 // AprilTagProcessorImpl inherits from AprilTagProcessorImpl.
 public class RawFrameProcessorImpl extends RawFrameProcessor {
     private static final String TAG = RawFrameProcessorImpl.class.getSimpleName();
 
-    Mat bgrFrame = new Mat();
-    private final AtomicReference<Pair<Mat, Date>> webcamFrame = new AtomicReference<>();
+    // Each slot in the frame pool is in exactly one of these states.
+    // Only the camera thread writes into a slot and only while the
+    // slot is WRITING; only the latest published frame is READY.
+    private enum FrameState {FREE, WRITING, READY, ACQUIRED}
+
+    private final RawFrame[] framePool;
+    private final FrameState[] frameStates;
+    private final CaptureMode captureMode;
+    private volatile Rect captureROI; // null means the full frame
+    private final FrameFormat frameFormat;
+    private final Lock poolLock = new ReentrantLock();
+    private final Condition frameReady = poolLock.newCondition();
+
+    // All of the fields below are guarded by poolLock.
+    private int latestFrameIndex = -1;
+    private long nextSequenceNumber = 1;
+    private long lastAcquiredSequenceNumber;
+    private long overrunCount; // frames dropped because no slot was free
+    private boolean closed;
+
+    // Demand for a frame in ON_DEMAND mode: the number of consumers
+    // blocked in awaitWebcamFrame() plus a one-shot request left by
+    // acquireWebcamFrame() when it had nothing to return.
+    private int waitingConsumers;
+    private boolean frameRequested;
+
+    private int exposureMs = FrameInfo.CAMERA_SETTING_AUTO;
+    private int gain = FrameInfo.CAMERA_SETTING_AUTO;
+
+    RawFrameProcessorImpl(int pFramePoolSize, CaptureMode pCaptureMode, Rect pCaptureROI, FrameFormat pFrameFormat) {
+        captureMode = pCaptureMode;
+        captureROI = pCaptureROI;
+        frameFormat = pFrameFormat;
+        framePool = new RawFrame[pFramePoolSize];
+        frameStates = new FrameState[pFramePoolSize];
+        for (int i = 0; i < pFramePoolSize; i++)
+            framePool[i] = new RawFrame(i);
+        Arrays.fill(frameStates, FrameState.FREE);
+    }
 
     //## This is a callback. It definitely runs on another thread.
     @Override
@@ -65,20 +108,120 @@ public class RawFrameProcessorImpl extends RawFrameProcessor {
         // to an inconsistency because the provided AprilTagProcessorImpl does
         // not provide any notifications in its init() and we'd have to change
         // the source code, which is illegal, to access a CountDownLatch there.
+
+        // Check the capture ROI against the actual frame size. Throwing
+        // here would only kill the camera thread so fall back to the full
+        // frame; ImageUtils.preProcessImage will crop it as before.
+        Rect roi = captureROI;
+        if (roi != null && (roi.x + roi.width > width || roi.y + roi.height > height)) {
+            RobotLogCommon.d(TAG, "Capture ROI " + roi + " does not fit a frame of width " + width +
+                    ", height " + height + "; capturing the full frame");
+            captureROI = null;
+        }
     }
  
     //## This is a callback; assume it's running on another thread.
-    // So store the frame in an AtomicReference.
+    // Unless there is no demand for a frame in ON_DEMAND mode, convert
+    // the frame into a free slot of the frame pool and then publish it
+    // under the pool lock and wake up any waiting consumer.
+    // The conversion itself takes place outside of the lock so that a
+    // consumer is never blocked by it.
     @Override
     public Object processFrame(Mat input, long captureTimeNanos) {
-        // From the EasyOpenCV readme:
-        // **IMPORTANT NOTE:** EasyOpenCV delivers RGBA frames
-        // So we need to convert to BGR for OpenCV here.
-        Imgproc.cvtColor(input, bgrFrame, Imgproc.COLOR_RGBA2BGR);
-        webcamFrame.set(Pair.create(bgrFrame, new Date()));
+        int writeIndex = -1;
+        long sequenceNumber;
+        poolLock.lock();
+        try {
+            sequenceNumber = nextSequenceNumber++;
+            if (closed)
+                return input;
+
+            // No one wants this frame; skip the conversion entirely.
+            if (captureMode == CaptureMode.ON_DEMAND && waitingConsumers == 0 && !frameRequested)
+                return input;
+
+            for (int i = 0; i < frameStates.length; i++) {
+                if (frameStates[i] == FrameState.FREE) {
+                    writeIndex = i;
+                    break;
+                }
+            }
+
+            // All slots are held by consumers; drop this frame.
+            if (writeIndex == -1) {
+                overrunCount++;
+                return input;
+            }
+
+            frameStates[writeIndex] = FrameState.WRITING;
+        } finally {
+            poolLock.unlock();
+        }
+
+        // submat only creates a header; only the pixels in the ROI
+        // are read and converted.
+        Mat poolFrame = framePool[writeIndex].getFrame();
+        Rect roi = captureROI;
+        if (roi == null)
+            convertFrame(input, poolFrame);
+        else {
+            Mat inputROI = MatTracker.track(MatTracker.Stage.CAPTURE, input.submat(roi));
+            convertFrame(inputROI, poolFrame);
+            MatTracker.release(inputROI);
+        }
+
+        poolLock.lock();
+        try {
+            // The pool was closed during the conversion.
+            if (closed) {
+                frameStates[writeIndex] = FrameState.FREE;
+                framePool[writeIndex].release();
+                return input;
+            }
+
+            // A published frame that no consumer has acquired is
+            // superseded by this one.
+            if (latestFrameIndex != -1 && frameStates[latestFrameIndex] == FrameState.READY)
+                frameStates[latestFrameIndex] = FrameState.FREE;
+
+            // Translate the capture time into wall clock time.
+            long timestampMs = System.currentTimeMillis() - (System.nanoTime() - captureTimeNanos) / 1_000_000;
+            framePool[writeIndex].setFrameData(sequenceNumber, captureTimeNanos, timestampMs, exposureMs, gain);
+            frameStates[writeIndex] = FrameState.READY;
+            latestFrameIndex = writeIndex;
+            frameRequested = false;
+            frameReady.signalAll();
+        } finally {
+            poolLock.unlock();
+        }
+
         return input;
     }
 
+    // From the EasyOpenCV readme:
+    // **IMPORTANT NOTE:** EasyOpenCV delivers RGBA frames
+    // So we need to convert to BGR for OpenCV here or extract a single
+    // channel by its RGBA index. After the first frame the Mat in the
+    // slot is already the right size so neither call allocates.
+    private void convertFrame(Mat pRGBAInput, Mat pFrame) {
+        switch (frameFormat) {
+            case BGR: {
+                Imgproc.cvtColor(pRGBAInput, pFrame, Imgproc.COLOR_RGBA2BGR);
+                break;
+            }
+            case RED_INVERTED: {
+                ImageUtils.extractInvertedChannel(pRGBAInput, 0, pFrame);
+                break;
+            }
+            case BLUE_INVERTED: {
+                ImageUtils.extractInvertedChannel(pRGBAInput, 2, pFrame);
+                break;
+            }
+            default:
+                throw new AutonomousRobotException(TAG, "Unrecognized frame format " + frameFormat);
+        }
+    }
+
     //## This is a callback.
     @Override
     public void onDrawFrame(Canvas canvas, int onscreenWidth, int onscreenHeight, float scaleBmpPxToCanvasPx, float scaleCanvasDensity, Object userContext) {
@@ -88,7 +231,112 @@ public class RawFrameProcessorImpl extends RawFrameProcessor {
     }
 
     @Override
-    public Pair<Mat, Date> getWebcamFrame() {
-            return webcamFrame.getAndSet(null);
+    public RawFrame acquireWebcamFrame() {
+        poolLock.lock();
+        try {
+            if (closed || latestFrameIndex == -1 || frameStates[latestFrameIndex] != FrameState.READY) {
+                frameRequested = true; // only matters in ON_DEMAND mode
+                return null; // no frame has arrived since the last acquisition
+            }
+
+            return acquireLatestFrame();
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    @Override
+    public RawFrame awaitWebcamFrame(long pTimeoutMs, long pCapturedNoEarlierThanNanos) throws InterruptedException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(pTimeoutMs);
+        poolLock.lock();
+        try {
+            // processFrame signals every time it publishes a frame, so at
+            // most one frame interval passes between the arrival of a
+            // qualifying frame and our wakeup.
+            waitingConsumers++;
+            try {
+                while (latestFrameIndex == -1 || frameStates[latestFrameIndex] != FrameState.READY ||
+                        framePool[latestFrameIndex].getCaptureTimeNanos() < pCapturedNoEarlierThanNanos) {
+                    if (closed || remainingNanos <= 0)
+                        return null;
+                    remainingNanos = frameReady.awaitNanos(remainingNanos);
+                }
+
+                return acquireLatestFrame();
+            } finally {
+                waitingConsumers--;
+            }
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    // Must be called while holding poolLock and only when the latest
+    // frame is READY.
+    private RawFrame acquireLatestFrame() {
+        RawFrame latestFrame = framePool[latestFrameIndex];
+        frameStates[latestFrameIndex] = FrameState.ACQUIRED;
+        long framesSkipped = lastAcquiredSequenceNumber == 0 ? 0 :
+                latestFrame.getSequenceNumber() - lastAcquiredSequenceNumber - 1;
+        latestFrame.setFramesSkipped(framesSkipped);
+        lastAcquiredSequenceNumber = latestFrame.getSequenceNumber();
+        return latestFrame;
+    }
+
+    @Override
+    public void setCameraSettings(int pExposureMs, int pGain) {
+        poolLock.lock();
+        try {
+            exposureMs = pExposureMs;
+            gain = pGain;
+        } finally {
+            poolLock.unlock();
+        }
+    }
+
+    @Override
+    public void releaseWebcamFrame(RawFrame pRawFrame) {
+        long overruns;
+        poolLock.lock();
+        try {
+            if (pRawFrame.poolIndex >= framePool.length || framePool[pRawFrame.poolIndex] != pRawFrame)
+                throw new AutonomousRobotException(TAG, "Attempt to release a frame that does not belong to this processor");
+
+            if (frameStates[pRawFrame.poolIndex] != FrameState.ACQUIRED)
+                throw new AutonomousRobotException(TAG, "Attempt to release frame " + pRawFrame.getSequenceNumber() + " which has not been acquired");
+
+            frameStates[pRawFrame.poolIndex] = FrameState.FREE;
+            if (closed)
+                pRawFrame.release(); // the pool was closed while the frame was held
+            overruns = overrunCount;
+            overrunCount = 0;
+        } finally {
+            poolLock.unlock();
+        }
+
+        if (overruns != 0)
+            RobotLogCommon.d(TAG, "Frames dropped because the frame pool was exhausted: " + overruns);
+    }
+
+    @Override
+    public void close() {
+        poolLock.lock();
+        try {
+            if (closed)
+                return;
+
+            closed = true;
+            for (int i = 0; i < framePool.length; i++)
+                if (frameStates[i] == FrameState.FREE || frameStates[i] == FrameState.READY) {
+                    frameStates[i] = FrameState.FREE;
+                    framePool[i].release();
+                }
+            latestFrameIndex = -1;
+            frameReady.signalAll();
+        } finally {
+            poolLock.unlock();
+        }
+
+        RobotLogCommon.d(TAG, "Closed the frame pool");
     }
-}
\ No newline at end of file
+}
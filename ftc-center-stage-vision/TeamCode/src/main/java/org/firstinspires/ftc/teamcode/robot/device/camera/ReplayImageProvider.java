@@ -0,0 +1,62 @@
+package org.firstinspires.ftc.teamcode.robot.device.camera;
+
+import org.firstinspires.ftc.ftcdevcommon.Pair;
+import org.firstinspires.ftc.teamcode.auto.vision.FrameReplay;
+import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+
+// An ImageProvider that replays previously captured images instead of
+// taking them from a webcam, e.g. to drive TeamPropRecognition at full
+// throughput. The replay itself is a FrameReplay; this class adds the
+// robot log and the FrameInfo.
+public class ReplayImageProvider implements ImageProvider, AutoCloseable {
+    private static final String TAG = ReplayImageProvider.class.getSimpleName();
+
+    private static final FrameReplay.ReplayLog ROBOT_LOG = pMessage -> RobotLogCommon.d(TAG, pMessage);
+
+    private final FrameReplay frameReplay;
+
+    // Replays all of the _IMG.png files in a directory in the order of
+    // their timestamps.
+    public ReplayImageProvider(String pImageDirectory, FrameReplay.ReplaySpeed pReplaySpeed, int pCacheCapacity) {
+        frameReplay = new FrameReplay(pImageDirectory, pReplaySpeed, pCacheCapacity, ROBOT_LOG);
+    }
+
+    public ReplayImageProvider(FrameReplay.FrameSource pFrameSource, FrameReplay.ReplaySpeed pReplaySpeed, int pCacheCapacity) {
+        frameReplay = new FrameReplay(pFrameSource, pReplaySpeed, pCacheCapacity, ROBOT_LOG);
+    }
+
+    // A source for the _IMG entries of a FrameJournal that logs to the
+    // robot log; the caller must close it after the replay.
+    public static FrameReplay.JournalSource openJournal(String pJournalPath) throws IOException {
+        return new FrameReplay.JournalSource(pJournalPath, ROBOT_LOG);
+    }
+
+    // Returns null at the end of the replay. The returned Mat belongs
+    // to this provider until releaseImage() or the next call to getImage().
+    @Override
+    public Pair<Mat, FrameInfo> getImage() throws InterruptedException {
+        FrameReplay.ReplayedFrame replayedFrame = frameReplay.nextFrame();
+        if (replayedFrame == null)
+            return null;
+
+        FrameInfo frameInfo = new FrameInfo(replayedFrame.sequenceNumber, replayedFrame.captureTimeNanos,
+                replayedFrame.timestamp, System.nanoTime(), FrameInfo.CAMERA_SETTING_AUTO, FrameInfo.CAMERA_SETTING_AUTO);
+        return Pair.create(replayedFrame.image, frameInfo);
+    }
+
+    @Override
+    public void releaseImage() {
+        frameReplay.releaseFrame();
+    }
+
+    // Stop the prefetch thread and release all images that have not
+    // been consumed.
+    @Override
+    public void close() {
+        frameReplay.close();
+    }
+
+}
@@ -77,10 +77,11 @@ public class SpikeWindowProcessorImpl extends SpikeWindowProcessor {
         // Now we have a spike window mapping. Create the required UserData
         // for the onDrawFrame callback.
         Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> leftWindow = currentSpikeWindowMapping.spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.LEFT);
+        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> centerWindow = currentSpikeWindowMapping.spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.CENTER);
         return new SpikeWindowUserContext(currentSpikeWindowMapping.imageParameters.resolution_width,
                 currentSpikeWindowMapping.imageParameters.resolution_height,
                 currentSpikeWindowMapping.imageParameters.image_roi,
-                leftWindow.first);
+                leftWindow.first, centerWindow == null ? null : centerWindow.first);
     }
 
     //## This is a callback.
@@ -118,6 +119,13 @@ public class SpikeWindowProcessorImpl extends SpikeWindowProcessor {
         // spike windows.
         float spikeWindowBoundaryX = left + (localContext.leftWindow.width * xFactor);
         canvas.drawLine(spikeWindowBoundaryX, top, spikeWindowBoundaryX, bottom, greenAxisPaint);
+
+        // If there is a center window draw the line that separates it
+        // from the right window.
+        if (localContext.centerWindow != null) {
+            float centerBoundaryX = left + ((localContext.centerWindow.x + localContext.centerWindow.width) * xFactor);
+            canvas.drawLine(centerBoundaryX, top, centerBoundaryX, bottom, greenAxisPaint);
+        }
     }
 
     @Override
@@ -130,13 +138,15 @@ public class SpikeWindowProcessorImpl extends SpikeWindowProcessor {
         private final int resolutionHeight;
         private final Rect roiRect;
         private final Rect leftWindow;
+        private final Rect centerWindow; // null if there is no center window
 
         private SpikeWindowUserContext(int pResolutionWidth, int pResolutionHeight,
-                                       Rect pROIRect, Rect pLeftWindow) {
+                                       Rect pROIRect, Rect pLeftWindow, Rect pCenterWindow) {
             resolutionWidth = pResolutionWidth;
             resolutionHeight = pResolutionHeight;
             roiRect = pROIRect;
             leftWindow = pLeftWindow;
+            centerWindow = pCenterWindow;
         }
     }
 
@@ -49,6 +49,14 @@ private static final String TAG = SpikeWindowRendering.class.getSimpleName();
         float spikeWindowBoundaryX = left + (Objects.requireNonNull(leftWindow,
                 TAG + " renderFrameToCanvas: left window is null").first.width * xFactor);
         pDriverStationScreenCanvas.drawLine(spikeWindowBoundaryX, top, spikeWindowBoundaryX, bottom, greenAxisPaint);
+
+        // If there is a center window draw the line that separates it
+        // from the right window.
+        Pair<Rect, RobotConstantsCenterStage.TeamPropLocation> centerWindow = spikeWindowMapping.spikeWindows.get(RobotConstantsCenterStage.SpikeLocationWindow.CENTER);
+        if (centerWindow != null) {
+            float centerBoundaryX = left + ((centerWindow.first.x + centerWindow.first.width) * xFactor);
+            pDriverStationScreenCanvas.drawLine(centerBoundaryX, top, centerBoundaryX, bottom, greenAxisPaint);
+        }
     }
 
 }
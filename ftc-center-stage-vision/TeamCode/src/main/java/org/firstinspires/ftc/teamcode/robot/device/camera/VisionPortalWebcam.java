@@ -35,6 +35,12 @@ public class VisionPortalWebcam {
 
     private final VisionPortalWebcamConfiguration.ConfiguredWebcam configuredWebcam;
     private final EnumMap<RobotConstantsCenterStage.ProcessorIdentifier, Pair<VisionProcessor, Boolean>> assignedProcessors;
+
+    // The processors as they are known to the VisionPortal: the same as
+    // the assigned processors except for those with a frame rate limit
+    // in RobotConfig.xml, which are wrapped in a RateLimitedProcessor.
+    private final EnumMap<RobotConstantsCenterStage.ProcessorIdentifier, VisionProcessor> portalProcessors =
+            new EnumMap<>(RobotConstantsCenterStage.ProcessorIdentifier.class);
     protected final VisionPortal visionPortal;
 
     // Constructor that can be used to attach a single processor to a webcam.
@@ -67,7 +73,18 @@ public class VisionPortalWebcam {
                 .enableLiveView(false);
 
         // Add all assigned processors here, which will enable them.
-        assignedProcessors.forEach((k, v) -> builder.addProcessor(v.first));
+        assignedProcessors.forEach((k, v) -> {
+            VisionPortalWebcamConfiguration.ProcessorFrameRate frameRate = configuredWebcam.processorFrameRates.get(k);
+            VisionProcessor portalProcessor = v.first;
+            if (frameRate != null) {
+                portalProcessor = new RateLimitedProcessor(v.first, frameRate);
+                RobotLogCommon.d(TAG, "Processor " + k + " limited to every " + frameRate.frameDecimation + " frame(s)" +
+                        (frameRate.maxFps == 0 ? "" : ", at most " + frameRate.maxFps + " fps"));
+            }
+
+            portalProcessors.put(k, portalProcessor);
+            builder.addProcessor(portalProcessor);
+        });
         visionPortal = builder.build();
 
         if (visionPortal.getCameraState() == VisionPortal.CameraState.ERROR)
@@ -80,7 +97,7 @@ public class VisionPortalWebcam {
                 RobotLogCommon.d(TAG, "Processor enabled on start " + k);
             }
             else {
-                visionPortal.setProcessorEnabled(v.first, false);
+                visionPortal.setProcessorEnabled(portalProcessors.get(k), false);
                 RobotLogCommon.d(TAG, "Processor disabled on start " + k);
             }
         });
@@ -116,10 +133,9 @@ public class VisionPortalWebcam {
         if (assignedProcessor == null)
             throw new AutonomousRobotException(TAG, "Attempt to enable an unassigned processor " + pProcessorId);
 
-        VisionProcessor processor = assignedProcessor.first;
-        if (!visionPortal.getProcessorEnabled(processor))
+        if (!visionPortal.getProcessorEnabled(portalProcessors.get(pProcessorId)))
             return null;
-        return processor;
+        return assignedProcessor.first;
     }
 
     // Adapted from the FTC SDK 9.0 sample RobotAutoDriveToAprilTagOmni.
@@ -157,6 +173,12 @@ public class VisionPortalWebcam {
         GainControl gainControl = visionPortal.getCameraControl(GainControl.class);
         gainControl.setGain(gain);
         sleep(20);
+
+        // Let the raw frame processor attach the settings to its frames.
+        assignedProcessors.forEach((k, v) -> {
+            if (v.first instanceof RawFrameProcessor)
+                ((RawFrameProcessor) v.first).setCameraSettings(exposureMS, gain);
+        });
     }
 
     public void enableProcessor(RobotConstantsCenterStage.ProcessorIdentifier pProcessorId) {
@@ -168,7 +190,7 @@ public class VisionPortalWebcam {
         if (assignedProcessor == null)
             throw new AutonomousRobotException(TAG, "Attempt to enable an unassigned processor " + pProcessorId);
 
-        VisionProcessor processor = assignedProcessor.first;
+        VisionProcessor processor = portalProcessors.get(pProcessorId);
         if (visionPortal.getProcessorEnabled(processor)) {
             RobotLogCommon.d(TAG, "Ignoring request to enable processor " + pProcessorId + " which is already enabled");
             return;
@@ -187,7 +209,7 @@ public class VisionPortalWebcam {
         if (assignedProcessor == null)
             throw new AutonomousRobotException(TAG, "Attempt to enable an unassigned processor " + pProcessorId);
 
-        VisionProcessor processor = assignedProcessor.first;
+        VisionProcessor processor = portalProcessors.get(pProcessorId);
         if (!visionPortal.getProcessorEnabled(processor)) {
             RobotLogCommon.d(TAG, "Request to disable the processor " + pProcessorId + " which is not enabled");
             return;
@@ -247,6 +269,12 @@ public class VisionPortalWebcam {
          */
 
         visionPortal.close();
+
+        // The VisionPortal does not know about the frame pool.
+        assignedProcessors.forEach((k, v) -> {
+            if (v.first instanceof RawFrameProcessor)
+                ((RawFrameProcessor) v.first).close();
+        });
         RobotLogCommon.d(TAG, "Final shutdown of the webcam " + configuredWebcam.internalWebcamId);
     }
 
@@ -4,6 +4,7 @@ import org.firstinspires.ftc.robotcore.external.hardware.camera.WebcamName;
 import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 
 // Configuration parameters for all webcams.
 public class VisionPortalWebcamConfiguration {
@@ -21,6 +22,9 @@ public class VisionPortalWebcamConfiguration {
         public final ArrayList<RobotConstantsCenterStage.ProcessorIdentifier> processorIdentifiers;
         public final CameraCalibration cameraCalibration;
 
+        // Contains entries only for processors whose frame rate is limited.
+        public final EnumMap<RobotConstantsCenterStage.ProcessorIdentifier, ProcessorFrameRate> processorFrameRates;
+
         // The non-final fields have setters which are called during initialization.
         private WebcamName webcamName;
         private VisionPortalWebcam visionPortalWebcam;
@@ -33,6 +37,21 @@ public class VisionPortalWebcamConfiguration {
                                 double pOffsetCameraLensFromRobotCenter,
                                 ArrayList<RobotConstantsCenterStage.ProcessorIdentifier> pProcessorIdentifiers,
                                 CameraCalibration pCameraCalibration) {
+            this(pCameraId, pSerialNumber, pResolutionWidth, pResolutionHeight,
+                    pDistanceCameraLensToRobotCenter, pOffsetCameraLensFromRobotCenter,
+                    pProcessorIdentifiers, new EnumMap<>(RobotConstantsCenterStage.ProcessorIdentifier.class),
+                    pCameraCalibration);
+        }
+
+        public ConfiguredWebcam(RobotConstantsCenterStage.InternalWebcamId pCameraId,
+                                String pSerialNumber,
+                                int pResolutionWidth,
+                                int pResolutionHeight,
+                                double pDistanceCameraLensToRobotCenter,
+                                double pOffsetCameraLensFromRobotCenter,
+                                ArrayList<RobotConstantsCenterStage.ProcessorIdentifier> pProcessorIdentifiers,
+                                EnumMap<RobotConstantsCenterStage.ProcessorIdentifier, ProcessorFrameRate> pProcessorFrameRates,
+                                CameraCalibration pCameraCalibration) {
             internalWebcamId = pCameraId;
             serialNumber = pSerialNumber;
             resolutionWidth = pResolutionWidth;
@@ -40,6 +59,7 @@ public class VisionPortalWebcamConfiguration {
             distanceCameraLensToRobotCenter = pDistanceCameraLensToRobotCenter;
             offsetCameraLensFromRobotCenter = pOffsetCameraLensFromRobotCenter;
             processorIdentifiers = pProcessorIdentifiers;
+            processorFrameRates = pProcessorFrameRates;
             cameraCalibration = pCameraCalibration;
         }
 
@@ -61,6 +81,19 @@ public class VisionPortalWebcamConfiguration {
 
     }
 
+    // Limits on the frames that a processor sees: every frameDecimation'th
+    // frame (1 = every frame) and at most maxFps frames per second (0 = no
+    // limit). From the optional attributes of <processor> in RobotConfig.xml.
+    public static class ProcessorFrameRate {
+        public final int frameDecimation;
+        public final double maxFps;
+
+        public ProcessorFrameRate(int pFrameDecimation, double pMaxFps) {
+            frameDecimation = pFrameDecimation;
+            maxFps = pMaxFps;
+        }
+    }
+
     public static class CameraCalibration {
           public final double focalLengthX;
           public final double focalLengthY;
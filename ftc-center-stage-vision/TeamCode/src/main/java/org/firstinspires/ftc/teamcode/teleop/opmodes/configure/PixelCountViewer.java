@@ -24,6 +24,7 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Objects;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -116,11 +117,18 @@ public class PixelCountViewer extends LinearOpMode {
         decreaseThreshold = new FTCButton(this, FTCButton.ButtonValue.GAMEPAD_1_DPAD_DOWN);
         requestImageCapture = new FTCButton(this, FTCButton.ButtonValue.GAMEPAD_1_LEFT_BUMPER);
 
-        while (!isStarted() && !isStopRequested()) {
-            updateButtons();
-            updatePlayerOne();
+        try {
+            while (!isStarted() && !isStopRequested()) {
+                updateButtons();
+                updatePlayerOne();
 
-            updateTelemetry();
+                updateTelemetry();
+            }
+        } finally {
+            if (pixelCountRendering != null) {
+                pixelCountProcessor.setCameraStreamRendering(null);
+                pixelCountRendering.release();
+            }
         }
 
         if (opModeIsActive()) {
@@ -242,8 +250,11 @@ public class PixelCountViewer extends LinearOpMode {
             opModeGrayParameters = allianceGrayParameters;
             currentThresholdLow = opModeGrayParameters.threshold_low;
             currentMinWhitePixelCount = allianceMinWhitePixelCount;
+            PixelCountRendering previousRendering = pixelCountRendering;
             pixelCountRendering = new PixelCountRendering(this, pOpMode, alliance, allianceGrayParameters, spikeWindows);
             pixelCountProcessor.setCameraStreamRendering(pixelCountRendering);
+            if (previousRendering != null)
+                previousRendering.release();
             RobotLogCommon.d(TAG, "Set pixel count rendering for " + pOpMode);
         }
     }
@@ -257,11 +268,11 @@ public class PixelCountViewer extends LinearOpMode {
 
         // Show Team Prop locations and pixel counts.
         if (pixelCountRendering != null) {
-            Pair<String, String> teamPropResults = pixelCountRendering.getTeamPropResults();
+            List<String> teamPropResults = pixelCountRendering.getTeamPropResults();
             if (teamPropResults != null) {
                 telemetry.addLine("Current minimum pixel count " + currentMinWhitePixelCount);
-                telemetry.addLine(teamPropResults.first); // left spike mark in view
-                telemetry.addLine(teamPropResults.second); // right spike mark in view
+                for (String windowResults : teamPropResults)
+                    telemetry.addLine(windowResults); // one line per spike mark in view
                 telemetry.addLine("Current low threshold " + currentThresholdLow);
                 telemetry.addLine("Change the threshold");
                 telemetry.addLine(" DPAD UP to increase for less white");
@@ -256,6 +256,8 @@ public class RobotConfigXML {
             throw new AutonomousRobotException(TAG, "Missing 'processor' elements");
 
         ArrayList<RobotConstantsCenterStage.ProcessorIdentifier> processorIds = new ArrayList<>();
+        EnumMap<RobotConstantsCenterStage.ProcessorIdentifier, VisionPortalWebcamConfiguration.ProcessorFrameRate> processorFrameRates =
+                new EnumMap<>(RobotConstantsCenterStage.ProcessorIdentifier.class);
         XMLUtils.processElements(processor_set_elements, (processor_node) -> {
             if (processor_node == null || !processor_node.getNodeName().equals("processor") ||
                     processor_node.getTextContent().isEmpty())
@@ -264,6 +266,10 @@ public class RobotConfigXML {
             RobotConstantsCenterStage.ProcessorIdentifier processorId =
                     RobotConstantsCenterStage.ProcessorIdentifier.valueOf(processor_node.getTextContent().toUpperCase());
             processorIds.add(processorId);
+
+            VisionPortalWebcamConfiguration.ProcessorFrameRate frameRate = parseProcessorFrameRate(processor_node);
+            if (frameRate != null)
+                processorFrameRates.put(processorId, frameRate);
         });
 
         // Parse the optional <webcam_calibration_for_apriltags> element
@@ -342,7 +348,44 @@ public class RobotConfigXML {
         return new VisionPortalWebcamConfiguration.ConfiguredWebcam(webcamId,
                 serial_number, resolution_width, resolution_height,
                 distance_camera_lens_to_robot_center, offset_camera_lens_from_robot_center,
-                processorIds, calibration);
+                processorIds, processorFrameRates, calibration);
+    }
+
+    // Parse the optional attributes frame_decimation and max_fps of a
+    // <processor> element, e.g. <processor frame_decimation="3">april_tag</processor>.
+    // Returns null if neither attribute is present.
+    private VisionPortalWebcamConfiguration.ProcessorFrameRate parseProcessorFrameRate(Node pProcessorNode) {
+        NamedNodeMap processor_attributes = pProcessorNode.getAttributes();
+        Node decimation_node = processor_attributes.getNamedItem("frame_decimation");
+        Node max_fps_node = processor_attributes.getNamedItem("max_fps");
+        if (decimation_node == null && max_fps_node == null)
+            return null;
+
+        int frameDecimation = 1;
+        if (decimation_node != null) {
+            try {
+                frameDecimation = Integer.parseInt(decimation_node.getTextContent());
+            } catch (NumberFormatException nex) {
+                throw new AutonomousRobotException(TAG, "Invalid number format in attribute 'frame_decimation'");
+            }
+
+            if (frameDecimation < 1)
+                throw new AutonomousRobotException(TAG, "Attribute 'frame_decimation' must be at least 1");
+        }
+
+        double maxFps = 0;
+        if (max_fps_node != null) {
+            try {
+                maxFps = Double.parseDouble(max_fps_node.getTextContent());
+            } catch (NumberFormatException nex) {
+                throw new AutonomousRobotException(TAG, "Invalid number format in attribute 'max_fps'");
+            }
+
+            if (maxFps <= 0)
+                throw new AutonomousRobotException(TAG, "Attribute 'max_fps' must be greater than 0");
+        }
+
+        return new VisionPortalWebcamConfiguration.ProcessorFrameRate(frameDecimation, maxFps);
     }
 
 }
@@ -11,13 +11,84 @@ public class SpikeWindowMapping {
     public final VisionParameters.ImageParameters imageParameters;
     public final RobotConstantsCenterStage.TeamPropRecognitionPath recognitionPath;
     public final EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> spikeWindows;
+    public final ConsensusParameters consensusParameters; // null for single-frame recognition
+    public final WindowGrid windowGrid; // 1 x 1 if not specified
+    public final EnsembleParameters ensembleParameters; // null unless recognition is by ensemble
+    public final RobotConstantsCenterStage.ArtifactLevel artifactLevel; // ALL if not specified
+    public final boolean frameJournal; // false, i.e. PNG files, if not specified
+    public final double processingScale; // 1.0, i.e. full resolution, if not specified
 
     public SpikeWindowMapping(VisionParameters.ImageParameters pImageParameters,
                            RobotConstantsCenterStage.TeamPropRecognitionPath pRecognitionPath,
-                           EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> pSpikeWindows) {
+                           EnumMap<RobotConstantsCenterStage.SpikeLocationWindow, Pair<Rect, RobotConstantsCenterStage.TeamPropLocation>> pSpikeWindows,
+                           ConsensusParameters pConsensusParameters,
+                           WindowGrid pWindowGrid,
+                           EnsembleParameters pEnsembleParameters,
+                           RobotConstantsCenterStage.ArtifactLevel pArtifactLevel,
+                           boolean pFrameJournal,
+                           double pProcessingScale) {
         imageParameters = pImageParameters;
         recognitionPath = pRecognitionPath;
         spikeWindows = pSpikeWindows;
+        consensusParameters = pConsensusParameters;
+        windowGrid = pWindowGrid;
+        ensembleParameters = pEnsembleParameters;
+        artifactLevel = pArtifactLevel;
+        frameJournal = pFrameJournal;
+        processingScale = pProcessingScale;
+    }
+
+    // The with... methods return a copy with one aspect changed, e.g.
+    // to run a benchmark on the mapping of an OpMode. This one is for
+    // recognition from a single frame by the recognition path alone,
+    // i.e. without consensus or an ensemble.
+    public SpikeWindowMapping withSingleFrameRecognition() {
+        return new SpikeWindowMapping(imageParameters, recognitionPath, spikeWindows, null, windowGrid, null,
+                artifactLevel, frameJournal, processingScale);
+    }
+
+    public SpikeWindowMapping withArtifactLevel(RobotConstantsCenterStage.ArtifactLevel pArtifactLevel) {
+        return new SpikeWindowMapping(imageParameters, recognitionPath, spikeWindows, consensusParameters, windowGrid,
+                ensembleParameters, pArtifactLevel, frameJournal, processingScale);
+    }
+
+    public SpikeWindowMapping withProcessingScale(double pProcessingScale) {
+        return new SpikeWindowMapping(imageParameters, recognitionPath, spikeWindows, consensusParameters, windowGrid,
+                ensembleParameters, artifactLevel, frameJournal, pProcessingScale);
+    }
+
+    // Recognition over consecutive frames stops as soon as the results
+    // from frames_to_agree frames agree or the time budget runs out.
+    public static class ConsensusParameters {
+        public final int frames_to_agree;
+        public final int time_budget_ms;
+
+        public ConsensusParameters(int pFramesToAgree, int pTimeBudgetMs) {
+            frames_to_agree = pFramesToAgree;
+            time_budget_ms = pTimeBudgetMs;
+        }
+    }
+
+    // Each visible spike window is divided into columns x rows cells
+    // for finer localization of the Team Prop within the window.
+    public static class WindowGrid {
+        public final int columns;
+        public final int rows;
+
+        public WindowGrid(int pColumns, int pRows) {
+            columns = pColumns;
+            rows = pRows;
+        }
+    }
+
+    // The recognition paths that run concurrently on the same ROI and
+    // the weight of each path's vote for the location of the Team Prop.
+    public static class EnsembleParameters {
+        public final EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, Double> weights;
+
+        public EnsembleParameters(EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, Double> pWeights) {
+            weights = pWeights;
+        }
     }
 
 }
@@ -181,8 +181,44 @@ public class SpikeWindowMappingXML {
 
         spikeWindows.put(RobotConstantsCenterStage.SpikeLocationWindow.LEFT, Pair.create(new Rect(0, 0, leftWidth, imageParameters.image_roi.height), leftPropLocation));
 
+        // Parse the optional <center_window> element, which starts 1 pixel
+        // past the left window, for an ROI in which all three spikes are
+        // visible.
+        int rightWindowX = leftWidth;
+        Node before_right_node = left_node;
+        Node center_node = left_node.getNextSibling();
+        center_node = XMLUtils.getNextElement(center_node);
+        if ((center_node != null) && center_node.getNodeName().equals("center_window")) {
+            Node center_width_node = center_node.getFirstChild();
+            center_width_node = XMLUtils.getNextElement(center_width_node);
+            if ((center_width_node == null) || !center_width_node.getNodeName().equals("width") || center_width_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'center_window/width' not found");
+
+            int centerWidth;
+            try {
+                centerWidth = Integer.parseInt(center_width_node.getTextContent());
+            } catch (NumberFormatException nex) {
+                throw new AutonomousRobotException(TAG, "Invalid number format in element 'center_window/width'");
+            }
+
+            Node center_prop_node = center_width_node.getNextSibling();
+            center_prop_node = XMLUtils.getNextElement(center_prop_node);
+            if ((center_prop_node == null) || !center_prop_node.getNodeName().equals("prop_location") || center_prop_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'center_window/prop_location' not found");
+
+            RobotConstantsCenterStage.TeamPropLocation centerPropLocation =
+                    RobotConstantsCenterStage.TeamPropLocation.valueOf(center_prop_node.getTextContent().toUpperCase());
+
+            spikeWindows.put(RobotConstantsCenterStage.SpikeLocationWindow.CENTER, Pair.create(new Rect(leftWidth, 0, centerWidth, imageParameters.image_roi.height), centerPropLocation));
+            rightWindowX = leftWidth + centerWidth;
+            before_right_node = center_node;
+        }
+
+        if (rightWindowX >= imageParameters.image_roi.width)
+            throw new AutonomousRobotException(TAG, "The spike windows leave no room for the right window");
+
         // Parse the <right_window> element.
-        Node right_node = left_node.getNextSibling();
+        Node right_node = before_right_node.getNextSibling();
         right_node = XMLUtils.getNextElement(right_node);
         if ((right_node == null) || !right_node.getNodeName().equals("right_window"))
             throw new AutonomousRobotException(TAG, "Element 'right_window' not found");
@@ -197,9 +233,9 @@ public class SpikeWindowMappingXML {
         RobotConstantsCenterStage.TeamPropLocation rightPropLocation =
                 RobotConstantsCenterStage.TeamPropLocation.valueOf(rightPropLocationText);
 
-        // Note: the right window starts 1 pixel past the left element. The height of the right
-        // window is the same as that of the left window.
-        spikeWindows.put(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT, Pair.create(new Rect(leftWidth, 0, imageParameters.image_roi.width - leftWidth, imageParameters.image_roi.height), rightPropLocation));
+        // Note: the right window starts 1 pixel past the left (or center) element. The height of
+        // the right window is the same as that of the left window.
+        spikeWindows.put(RobotConstantsCenterStage.SpikeLocationWindow.RIGHT, Pair.create(new Rect(rightWindowX, 0, imageParameters.image_roi.width - rightWindowX, imageParameters.image_roi.height), rightPropLocation));
 
         // Parse the <team_prop_npos> element.
         Node npos_node = right_node.getNextSibling();
@@ -219,7 +255,183 @@ public class SpikeWindowMappingXML {
 
         spikeWindows.put(RobotConstantsCenterStage.SpikeLocationWindow.WINDOW_NPOS, Pair.create(new Rect(0, 0, 0, 0), nposLocation));
 
-        return new SpikeWindowMapping(imageParameters, recognitionPath, spikeWindows);
+        // Parse the optional <window_grid> element.
+        SpikeWindowMapping.WindowGrid windowGrid = new SpikeWindowMapping.WindowGrid(1, 1);
+        Node next_node = npos_node.getNextSibling();
+        next_node = XMLUtils.getNextElement(next_node);
+        if ((next_node != null) && next_node.getNodeName().equals("window_grid")) {
+            windowGrid = parseWindowGrid(next_node);
+            next_node = XMLUtils.getNextElement(next_node.getNextSibling());
+        }
+
+        // Parse the optional <consensus> element.
+        SpikeWindowMapping.ConsensusParameters consensusParameters = null;
+        if ((next_node != null) && next_node.getNodeName().equals("consensus")) {
+            consensusParameters = parseConsensusParameters(next_node);
+            next_node = XMLUtils.getNextElement(next_node.getNextSibling());
+        }
+
+        // Parse the optional <ensemble> element.
+        SpikeWindowMapping.EnsembleParameters ensembleParameters = null;
+        if ((next_node != null) && next_node.getNodeName().equals("ensemble")) {
+            if (consensusParameters != null)
+                throw new AutonomousRobotException(TAG, "Elements 'consensus' and 'ensemble' may not be used together");
+            ensembleParameters = parseEnsembleParameters(next_node);
+            next_node = XMLUtils.getNextElement(next_node.getNextSibling());
+        }
+
+        // Parse the optional <artifact_level> element.
+        RobotConstantsCenterStage.ArtifactLevel artifactLevel = RobotConstantsCenterStage.ArtifactLevel.ALL;
+        if ((next_node != null) && next_node.getNodeName().equals("artifact_level")) {
+            if (next_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'artifact_level' is empty");
+            artifactLevel = RobotConstantsCenterStage.ArtifactLevel.valueOf(next_node.getTextContent().toUpperCase());
+            next_node = XMLUtils.getNextElement(next_node.getNextSibling());
+        }
+
+        // Parse the optional <frame_journal> element.
+        boolean frameJournal = false;
+        if ((next_node != null) && next_node.getNodeName().equals("frame_journal")) {
+            String frameJournalText = next_node.getTextContent().trim();
+            if (frameJournalText.equals("true"))
+                frameJournal = true;
+            else if (!frameJournalText.equals("false"))
+                throw new AutonomousRobotException(TAG, "Element 'frame_journal' must be true or false");
+            next_node = XMLUtils.getNextElement(next_node.getNextSibling());
+        }
+
+        // Parse the optional <processing_scale> element.
+        double processingScale = 1.0;
+        if ((next_node != null) && next_node.getNodeName().equals("processing_scale")) {
+            try {
+                processingScale = Double.parseDouble(next_node.getTextContent());
+            } catch (NumberFormatException nex) {
+                throw new AutonomousRobotException(TAG, "Invalid number format in element 'processing_scale'");
+            }
+
+            if (processingScale <= 0.0 || processingScale > 1.0)
+                throw new AutonomousRobotException(TAG, "Element 'processing_scale' must be greater than 0 and at most 1");
+        }
+
+        return new SpikeWindowMapping(imageParameters, recognitionPath, spikeWindows, consensusParameters, windowGrid, ensembleParameters,
+                artifactLevel, frameJournal, processingScale);
+    }
+
+    private SpikeWindowMapping.EnsembleParameters parseEnsembleParameters(Node pEnsembleNode) {
+        EnumMap<RobotConstantsCenterStage.TeamPropRecognitionPath, Double> weights =
+                new EnumMap<>(RobotConstantsCenterStage.TeamPropRecognitionPath.class);
+
+        // Parse one or more <member> elements.
+        Node member_node = pEnsembleNode.getFirstChild();
+        member_node = XMLUtils.getNextElement(member_node);
+        while (member_node != null) {
+            if (!member_node.getNodeName().equals("member"))
+                throw new AutonomousRobotException(TAG, "Element 'ensemble/" + member_node.getNodeName() + "' is not a 'member'");
+
+            // Drop down and parse the <recognition_path> element.
+            Node path_node = member_node.getFirstChild();
+            path_node = XMLUtils.getNextElement(path_node);
+            if ((path_node == null) || !path_node.getNodeName().equals("recognition_path") || path_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'ensemble/member/recognition_path' not found");
+
+            RobotConstantsCenterStage.TeamPropRecognitionPath memberPath =
+                    RobotConstantsCenterStage.TeamPropRecognitionPath.valueOf(path_node.getTextContent().toUpperCase());
+
+            // Parse the <weight> element.
+            Node weight_node = path_node.getNextSibling();
+            weight_node = XMLUtils.getNextElement(weight_node);
+            if ((weight_node == null) || !weight_node.getNodeName().equals("weight") || weight_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'ensemble/member/weight' not found");
+
+            double weight;
+            try {
+                weight = Double.parseDouble(weight_node.getTextContent());
+            } catch (NumberFormatException nex) {
+                throw new AutonomousRobotException(TAG, "Invalid number format in element 'ensemble/member/weight'");
+            }
+
+            if (weight <= 0.0)
+                throw new AutonomousRobotException(TAG, "Element 'ensemble/member/weight' must be greater than 0");
+
+            if (weights.put(memberPath, weight) != null)
+                throw new AutonomousRobotException(TAG, "Duplicate ensemble member " + memberPath);
+
+            member_node = XMLUtils.getNextElement(member_node.getNextSibling());
+        }
+
+        if (weights.isEmpty())
+            throw new AutonomousRobotException(TAG, "Element 'ensemble' has no members");
+
+        return new SpikeWindowMapping.EnsembleParameters(weights);
+    }
+
+    private SpikeWindowMapping.WindowGrid parseWindowGrid(Node pWindowGridNode) {
+        // Drop down and parse the <columns> element.
+        Node columns_node = pWindowGridNode.getFirstChild();
+        columns_node = XMLUtils.getNextElement(columns_node);
+        if ((columns_node == null) || !columns_node.getNodeName().equals("columns") || columns_node.getTextContent().isEmpty())
+            throw new AutonomousRobotException(TAG, "Element 'window_grid/columns' not found");
+
+        int columns;
+        try {
+            columns = Integer.parseInt(columns_node.getTextContent());
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element 'window_grid/columns'");
+        }
+
+        // Parse the <rows> element.
+        Node rows_node = columns_node.getNextSibling();
+        rows_node = XMLUtils.getNextElement(rows_node);
+        if ((rows_node == null) || !rows_node.getNodeName().equals("rows") || rows_node.getTextContent().isEmpty())
+            throw new AutonomousRobotException(TAG, "Element 'window_grid/rows' not found");
+
+        int rows;
+        try {
+            rows = Integer.parseInt(rows_node.getTextContent());
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element 'window_grid/rows'");
+        }
+
+        if (columns < 1 || rows < 1)
+            throw new AutonomousRobotException(TAG, "Elements 'window_grid/columns' and 'window_grid/rows' must be at least 1");
+
+        return new SpikeWindowMapping.WindowGrid(columns, rows);
+    }
+
+    private SpikeWindowMapping.ConsensusParameters parseConsensusParameters(Node pConsensusNode) {
+        // Drop down and parse the <frames_to_agree> element.
+        Node frames_node = pConsensusNode.getFirstChild();
+        frames_node = XMLUtils.getNextElement(frames_node);
+        if ((frames_node == null) || !frames_node.getNodeName().equals("frames_to_agree") || frames_node.getTextContent().isEmpty())
+            throw new AutonomousRobotException(TAG, "Element 'consensus/frames_to_agree' not found");
+
+        int framesToAgree;
+        try {
+            framesToAgree = Integer.parseInt(frames_node.getTextContent());
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element 'consensus/frames_to_agree'");
+        }
+
+        if (framesToAgree < 1)
+            throw new AutonomousRobotException(TAG, "Element 'consensus/frames_to_agree' must be at least 1");
+
+        // Parse the <time_budget_ms> element.
+        Node budget_node = frames_node.getNextSibling();
+        budget_node = XMLUtils.getNextElement(budget_node);
+        if ((budget_node == null) || !budget_node.getNodeName().equals("time_budget_ms") || budget_node.getTextContent().isEmpty())
+            throw new AutonomousRobotException(TAG, "Element 'consensus/time_budget_ms' not found");
+
+        int timeBudgetMs;
+        try {
+            timeBudgetMs = Integer.parseInt(budget_node.getTextContent());
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element 'consensus/time_budget_ms'");
+        }
+
+        if (timeBudgetMs <= 0)
+            throw new AutonomousRobotException(TAG, "Element 'consensus/time_budget_ms' must be greater than 0");
+
+        return new SpikeWindowMapping.ConsensusParameters(framesToAgree, timeBudgetMs);
     }
 
 }
\ No newline at end of file
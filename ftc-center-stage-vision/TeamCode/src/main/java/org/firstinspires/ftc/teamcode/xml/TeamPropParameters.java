@@ -1,32 +1,52 @@
 package org.firstinspires.ftc.teamcode.xml;
 
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
+
 // Input parameters to Team Prop recognition.
 public class TeamPropParameters {
 
     public final ColorChannelCirclesParameters colorChannelCirclesParameters;
     public final ColorChannelPixelCountParameters colorChannelPixelCountParameters;
     public final BrightSpotParameters brightSpotParameters;
+    public final GrayscalePixelCountParameters grayscalePixelCountParameters; // optional, may be null
 
     public TeamPropParameters(ColorChannelCirclesParameters pColorChannelCirclesParameters,
                               ColorChannelPixelCountParameters pColorChannelPixelCountParameters,
                               BrightSpotParameters pBrightSpotParameters
                               ) {
+        this(pColorChannelCirclesParameters, pColorChannelPixelCountParameters, pBrightSpotParameters, null);
+    }
+
+    public TeamPropParameters(ColorChannelCirclesParameters pColorChannelCirclesParameters,
+                              ColorChannelPixelCountParameters pColorChannelPixelCountParameters,
+                              BrightSpotParameters pBrightSpotParameters,
+                              GrayscalePixelCountParameters pGrayscalePixelCountParameters) {
         colorChannelCirclesParameters = pColorChannelCirclesParameters;
         colorChannelPixelCountParameters = pColorChannelPixelCountParameters;
         brightSpotParameters = pBrightSpotParameters;
+        grayscalePixelCountParameters = pGrayscalePixelCountParameters;
     }
 
     public static class ColorChannelCirclesParameters {
         public final VisionParameters.GrayParameters grayParameters;
         public final HoughCirclesFunctionCallParameters houghCirclesFunctionCallParameters;
         public final int maxCircles;
+        public final RobotConstantsCenterStage.CircleSearch circleSearch; // WHOLE_ROI if not specified
 
         public ColorChannelCirclesParameters(VisionParameters.GrayParameters pGrayParameters,
                                              HoughCirclesFunctionCallParameters pHoughCirclesFunctionCallParameters,
                                              int pMaxCircles) {
+            this(pGrayParameters, pHoughCirclesFunctionCallParameters, pMaxCircles,
+                    RobotConstantsCenterStage.CircleSearch.WHOLE_ROI);
+        }
+
+        public ColorChannelCirclesParameters(VisionParameters.GrayParameters pGrayParameters,
+                                             HoughCirclesFunctionCallParameters pHoughCirclesFunctionCallParameters,
+                                             int pMaxCircles, RobotConstantsCenterStage.CircleSearch pCircleSearch) {
             grayParameters = pGrayParameters;
             houghCirclesFunctionCallParameters = pHoughCirclesFunctionCallParameters;
             maxCircles = pMaxCircles;
+            circleSearch = pCircleSearch;
         }
     }
 
@@ -75,14 +95,40 @@ public class TeamPropParameters {
         public final double redBlurKernel;
         public final VisionParameters.GrayParameters blueGrayParameters;
         public final double blueBlurKernel;
+        public final RobotConstantsCenterStage.BrightSpotEngine engine; // GAUSSIAN if not specified
 
         public BrightSpotParameters(VisionParameters.GrayParameters pRedGrayParameters, double pRedBlurKernel,
                                     VisionParameters.GrayParameters pBlueGrayParameters, double pBlueBlurKernel) {
+            this(pRedGrayParameters, pRedBlurKernel, pBlueGrayParameters, pBlueBlurKernel,
+                    RobotConstantsCenterStage.BrightSpotEngine.GAUSSIAN);
+        }
+
+        public BrightSpotParameters(VisionParameters.GrayParameters pRedGrayParameters, double pRedBlurKernel,
+                                    VisionParameters.GrayParameters pBlueGrayParameters, double pBlueBlurKernel,
+                                    RobotConstantsCenterStage.BrightSpotEngine pEngine) {
             redGrayParameters = pRedGrayParameters;
             redBlurKernel = pRedBlurKernel;
             blueGrayParameters = pBlueGrayParameters;
             blueBlurKernel = pBlueBlurKernel;
+            engine = pEngine;
+        }
+    }
+
+    // For a monochrome camera the alliance is still needed because the
+    // red and blue Team Props show up as different shades of gray.
+    public static class GrayscalePixelCountParameters {
+        public final VisionParameters.GrayParameters redGrayParameters;
+        public final int redMinWhitePixelCount;
+        public final VisionParameters.GrayParameters blueGrayParameters;
+        public final int blueMinWhitePixelCount;
+
+        public GrayscalePixelCountParameters(VisionParameters.GrayParameters pRedGrayParameters, int pRedMinWhitePixelCount,
+                                             VisionParameters.GrayParameters pBlueGrayParameters, int pBlueMinWhitePixelCount) {
+            redGrayParameters = pRedGrayParameters;
+            redMinWhitePixelCount = pRedMinWhitePixelCount;
+            blueGrayParameters = pBlueGrayParameters;
+            blueMinWhitePixelCount = pBlueMinWhitePixelCount;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -1,8 +1,10 @@
 package org.firstinspires.ftc.teamcode.xml;
 
 import org.firstinspires.ftc.ftcdevcommon.AutonomousRobotException;
+import org.firstinspires.ftc.ftcdevcommon.Pair;
 import org.firstinspires.ftc.ftcdevcommon.xml.XMLUtils;
 import org.firstinspires.ftc.teamcode.common.RobotConstants;
+import org.firstinspires.ftc.teamcode.common.RobotConstantsCenterStage;
 import org.firstinspires.ftc.teamcode.common.RobotLogCommon;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -194,9 +196,19 @@ public class TeamPropParametersXML {
             throw new AutonomousRobotException(TAG, "Invalid number format in element 'max_circles'");
         }
 
+        // Parse the optional <circle_search> element.
+        RobotConstantsCenterStage.CircleSearch circleSearch = RobotConstantsCenterStage.CircleSearch.WHOLE_ROI;
+        Node circle_search_node = criteria_node.getNextSibling();
+        circle_search_node = XMLUtils.getNextElement(circle_search_node);
+        if ((circle_search_node != null) && circle_search_node.getNodeName().equals("circle_search")) {
+            if (circle_search_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'circle_search' is empty");
+            circleSearch = RobotConstantsCenterStage.CircleSearch.valueOf(circle_search_node.getTextContent().toUpperCase());
+        }
+
         TeamPropParameters.ColorChannelCirclesParameters colorChannelCirclesParameters =
                 new TeamPropParameters.ColorChannelCirclesParameters(grayParameters,
-                        houghCirclesFunctionCallParameters, maxCircles);
+                        houghCirclesFunctionCallParameters, maxCircles, circleSearch);
 
         // Point to <color_channel_pixel_count>
         Node pixel_count_node = circles_node.getNextSibling();
@@ -354,11 +366,81 @@ public class TeamPropParametersXML {
             throw new AutonomousRobotException(TAG, "Invalid number format in element 'bright_spot/BLUE/blur_kernel'");
         }
 
+        // Parse the optional <engine> element.
+        RobotConstantsCenterStage.BrightSpotEngine brightSpotEngine = RobotConstantsCenterStage.BrightSpotEngine.GAUSSIAN;
+        Node bright_engine_node = blue_bright_node.getNextSibling();
+        bright_engine_node = XMLUtils.getNextElement(bright_engine_node);
+        if ((bright_engine_node != null) && bright_engine_node.getNodeName().equals("engine")) {
+            if (bright_engine_node.getTextContent().isEmpty())
+                throw new AutonomousRobotException(TAG, "Element 'bright_spot/engine' is empty");
+            brightSpotEngine = RobotConstantsCenterStage.BrightSpotEngine.valueOf(bright_engine_node.getTextContent().toUpperCase());
+        }
+
         TeamPropParameters.BrightSpotParameters brightSpotParameters =
                 new TeamPropParameters.BrightSpotParameters(redBrightSpotGrayParameters, redBlurKernel,
-                        blueBrightSpotGrayParameters, blueBlurKernel);
+                        blueBrightSpotGrayParameters, blueBlurKernel, brightSpotEngine);
+
+        // Point to the optional <grayscale_pixel_count>
+        TeamPropParameters.GrayscalePixelCountParameters grayscalePixelCountParameters = null;
+        Node gray_pixel_count_node = bright_spot_node.getNextSibling();
+        gray_pixel_count_node = XMLUtils.getNextElement(gray_pixel_count_node);
+        if ((gray_pixel_count_node != null) && gray_pixel_count_node.getNodeName().equals("grayscale_pixel_count")) {
+            // Point to <RED> for the red alliance parameters.
+            Node red_gray_pixel_count_node = gray_pixel_count_node.getFirstChild();
+            red_gray_pixel_count_node = XMLUtils.getNextElement(red_gray_pixel_count_node);
+            if ((red_gray_pixel_count_node == null) || !red_gray_pixel_count_node.getNodeName().equals("RED"))
+                throw new AutonomousRobotException(TAG, "Element 'RED' under 'grayscale_pixel_count' not found");
+
+            Pair<VisionParameters.GrayParameters, Integer> redGrayPixelCount = parsePixelCountAlliance(red_gray_pixel_count_node, "grayscale_pixel_count/RED");
+
+            // Point to <BLUE> for the blue alliance parameters.
+            Node blue_gray_pixel_count_node = red_gray_pixel_count_node.getNextSibling();
+            blue_gray_pixel_count_node = XMLUtils.getNextElement(blue_gray_pixel_count_node);
+            if ((blue_gray_pixel_count_node == null) || !blue_gray_pixel_count_node.getNodeName().equals("BLUE"))
+                throw new AutonomousRobotException(TAG, "Element 'BLUE' under 'grayscale_pixel_count' not found");
+
+            Pair<VisionParameters.GrayParameters, Integer> blueGrayPixelCount = parsePixelCountAlliance(blue_gray_pixel_count_node, "grayscale_pixel_count/BLUE");
+
+            grayscalePixelCountParameters = new TeamPropParameters.GrayscalePixelCountParameters(redGrayPixelCount.first, redGrayPixelCount.second,
+                    blueGrayPixelCount.first, blueGrayPixelCount.second);
+        }
+
+        teamPropParameters = new TeamPropParameters(colorChannelCirclesParameters, colorChannelPixelCountParameters, brightSpotParameters,
+                grayscalePixelCountParameters);
+    }
+
+    // Parse the <gray_parameters> and <criteria> children of a RED or
+    // BLUE element under a pixel count path.
+    private Pair<VisionParameters.GrayParameters, Integer> parsePixelCountAlliance(Node pAllianceNode, String pPath) {
+        // Point to <gray_parameters>
+        Node gray_node = pAllianceNode.getFirstChild();
+        gray_node = XMLUtils.getNextElement(gray_node);
+        if ((gray_node == null) || !gray_node.getNodeName().equals("gray_parameters"))
+            throw new AutonomousRobotException(TAG, "Element '" + pPath + "/gray_parameters' not found");
+
+        VisionParameters.GrayParameters grayParameters = ImageXML.parseGrayParameters(gray_node);
+
+        // Point to the <criteria>
+        Node criteria_node = gray_node.getNextSibling();
+        criteria_node = XMLUtils.getNextElement(criteria_node);
+        if ((criteria_node == null) || !criteria_node.getNodeName().equals("criteria"))
+            throw new AutonomousRobotException(TAG, "Element '" + pPath + "/criteria' not found");
+
+        // Parse the <min_white_pixel_count> element.
+        Node min_pixels_node = criteria_node.getFirstChild();
+        min_pixels_node = XMLUtils.getNextElement(min_pixels_node);
+        if (min_pixels_node == null || !min_pixels_node.getNodeName().equals("min_white_pixel_count") ||
+                min_pixels_node.getTextContent().isEmpty())
+            throw new AutonomousRobotException(TAG, "Element '" + pPath + "/criteria/min_white_pixel_count' not found or empty");
+
+        int minPixelCount;
+        try {
+            minPixelCount = Integer.parseInt(min_pixels_node.getTextContent());
+        } catch (NumberFormatException nex) {
+            throw new AutonomousRobotException(TAG, "Invalid number format in element '" + pPath + "/criteria/min_white_pixel_count'");
+        }
 
-        teamPropParameters = new TeamPropParameters(colorChannelCirclesParameters, colorChannelPixelCountParameters, brightSpotParameters);
+        return Pair.create(grayParameters, minPixelCount);
     }
 
     // Warning: this method returns the team prop parameters from the XML